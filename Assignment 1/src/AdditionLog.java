@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of statements added to a knowledge base. Additions are
+ * durable before they are applied in memory and are replayed on top of the
+ * knowledge base file at the next start.
+ *
+ * <p>
+ * Each record is a length, a CRC32 of the payload and the payload itself, a
+ * UTF-8 line of the form {@code term\tstatement\tconfidence}. A background
+ * thread commits every record waiting in the queue with one write and one
+ * force, so concurrent writers share the cost of syncing.
+ *
+ * <p>
+ * So that the log does not grow without bound, it is checkpointed every
+ * {@value #CHECKPOINT_RECORDS} records, or sooner once it holds
+ * {@value #CHECKPOINT_BYTES} bytes of new records. A checkpoint writes the
+ * knowledge base file followed by the logged lines to a temporary file,
+ * forces it and moves it over the knowledge base file, then empties the log.
+ * Loading the new file gives the same contents as loading the old one and
+ * replaying the log. Before the move the log is marked with the size and
+ * checksum of the new file, so if a crash comes between the move and
+ * emptying the log, the lines already in the file are not replayed again.
+ * A logged line that would be skipped as malformed when read back from the
+ * file stays in the log instead.
+ *
+ * <p>
+ * A log may be opened for an application that stores each distinct line
+ * once, as the BST application does. A checkpoint then writes each line only
+ * once. A log for an application that keeps repeated lines, as the array
+ * application does, writes every line.
+ */
+public class AdditionLog implements AutoCloseable {
+    private static final int CHECKPOINT_RECORDS = 1024;
+    private static final int CHECKPOINT_BYTES = 1 << 20;
+    private static final int HEADER_BYTES = 8; // Length and checksum
+    // Starts the payload of a checkpoint mark; a line typed at the keyboard never starts with NUL
+    private static final String MARK = "\0checkpoint\t";
+
+    private final Path path;
+    private final Path base; // The knowledge base file the log is replayed on
+    private final boolean dropRepeats; // Whether a checkpoint may drop repeated lines
+    private FileChannel channel;
+    private IOException failure; // Set if the log could not be reopened after a checkpoint
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Queued by close to stop the committer; interrupting it would close the channel
+    private final Pending stop = new Pending(new byte[0]);
+    private final Thread committer;
+    private int recordsSinceCheckpoint = 0;
+    private long bytesSinceCheckpoint = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * A record waiting to be committed.
+     */
+    private static class Pending {
+        final byte[] record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    private AdditionLog(Path path, Path base, boolean dropRepeats) throws IOException {
+        this.path = path;
+        this.base = base;
+        this.dropRepeats = dropRepeats;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        committer = new Thread(this::commitLoop, "addition-log-committer");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Returns the log file name used for a knowledge base file.
+     *
+     * @param fileName The name of the knowledge base file.
+     * @return The name of its log file.
+     */
+    public static String logFileName(String fileName) {
+        return fileName + ".wal";
+    }
+
+    /**
+     * Opens the log for a knowledge base file, creating it if needed, and
+     * reads back every addition it holds that is not already in the file. A
+     * torn record at the end of the log, left by a crash mid-write, is cut
+     * off, and a log left behind by an interrupted checkpoint is tidied up.
+     *
+     * @param fileName    The name of the knowledge base file.
+     * @param replayed    Receives the logged lines, oldest first.
+     * @param dropRepeats Whether the application stores each distinct line
+     *                    once, so that a checkpoint may write repeated lines
+     *                    to the file only once.
+     * @return The open log, ready for appends.
+     * @throws IOException If the log cannot be opened or read.
+     */
+    public static AdditionLog open(String fileName, List<String> replayed, boolean dropRepeats)
+            throws IOException {
+        AdditionLog log = new AdditionLog(Path.of(logFileName(fileName)), Path.of(fileName), dropRepeats);
+        List<String> records = new ArrayList<>();
+        long end = readRecords(log.channel, records);
+        log.channel.truncate(end);
+        log.channel.position(end);
+        List<String> pending = log.pending(records);
+        if (pending.size() < records.size()) {
+            log.rewrite(pending); // Drop the checkpoint mark and anything it covered
+            if (log.failure != null) {
+                log.channel.close();
+                throw log.failure;
+            }
+        }
+        replayed.addAll(pending);
+        log.recordsSinceCheckpoint = pending.size();
+        log.bytesSinceCheckpoint = log.channel.position();
+        log.committer.start();
+        return log;
+    }
+
+    /**
+     * Durably appends an addition, returning once it has been forced to disk.
+     *
+     * @param line The added line, {@code term\tstatement\tconfidence}.
+     * @throws IOException If the log is closed or the write fails.
+     */
+    public void append(String line) throws IOException {
+        if (closed) {
+            throw new IOException("Addition log is closed");
+        }
+        Pending pending = new Pending(encode(line));
+        queue.add(pending);
+        try {
+            pending.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the log", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not write to the addition log", e.getCause());
+        }
+    }
+
+    /**
+     * Commits any queued additions and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        queue.add(stop);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Release any writer that queued a record after the committer stopped
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.done.completeExceptionally(new IOException("Addition log is closed"));
+        }
+        channel.close();
+    }
+
+    /**
+     * Takes every record that is waiting, writes them together and forces
+     * them to disk before releasing their writers.
+     */
+    private void commitLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            // Commit everything queued before close, then stop
+            stopping = batch.remove(stop);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                if (failure != null) {
+                    throw new IOException("Addition log was lost after a checkpoint", failure);
+                }
+                int size = 0;
+                for (Pending pending : batch) {
+                    size += pending.record.length;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (Pending pending : batch) {
+                    buffer.put(pending.record);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                recordsSinceCheckpoint += batch.size();
+                bytesSinceCheckpoint += size;
+                if (recordsSinceCheckpoint >= CHECKPOINT_RECORDS || bytesSinceCheckpoint >= CHECKPOINT_BYTES) {
+                    // Before releasing the writers, so no checkpoint is running once an append returns
+                    checkpoint();
+                }
+                for (Pending pending : batch) {
+                    pending.done.complete(null);
+                }
+            } catch (IOException e) {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the logged lines into the knowledge base file and empties the
+     * log. The new file is forced and moved over the old one, so a crash
+     * leaves one complete file or the other. A failure is reported and
+     * otherwise leaves the log as it was, to be replayed as before.
+     */
+    private void checkpoint() {
+        recordsSinceCheckpoint = 0;
+        bytesSinceCheckpoint = 0;
+        Path temp = Path.of(base + ".tmp");
+        long markAt = -1;
+        try {
+            List<String> records = new ArrayList<>();
+            readRecords(channel, records);
+            List<String> pending = pending(records);
+            List<String> kept = new ArrayList<>(); // Lines the file could not hold
+            List<String> moved = new ArrayList<>();
+            HashSet<String> seen = new HashSet<>();
+            for (String line : pending) {
+                if (!KbFile.isWellFormed(line)) {
+                    kept.add(line);
+                } else if (seen.add(line) || !dropRepeats) {
+                    moved.add(line);
+                }
+            }
+            if (moved.isEmpty()) {
+                return; // Nothing the file can take
+            }
+            CRC32 crc = new CRC32();
+            long size = writeBase(temp, moved, crc);
+            markAt = channel.position();
+            ByteBuffer mark = ByteBuffer.wrap(encode(MARK + size + "\t" + crc.getValue()));
+            while (mark.hasRemaining()) {
+                channel.write(mark);
+            }
+            channel.force(false);
+            Files.move(temp, base, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            markAt = -1; // The mark now describes the file
+            rewrite(kept);
+        } catch (IOException e) {
+            System.err.println("Could not checkpoint the addition log: " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+                if (markAt >= 0) {
+                    channel.truncate(markAt); // The file was not replaced, so the mark does not apply
+                }
+            } catch (IOException ignored) {
+                // A mark that does not match the file is ignored when the log is read
+            }
+        }
+    }
+
+    /**
+     * Writes a copy of the knowledge base file with lines added at the end.
+     *
+     * @param temp  The file to write.
+     * @param lines The lines to add.
+     * @param crc   Updated with every byte written.
+     * @return The size of the new file.
+     * @throws IOException If the knowledge base file cannot be read or the
+     *                     copy cannot be written.
+     */
+    private long writeBase(Path temp, List<String> lines, CRC32 crc) throws IOException {
+        long size = 0;
+        try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            byte last = '\n';
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                last = buffer.get(buffer.limit() - 1);
+                size += write(out, buffer, crc);
+                buffer.clear();
+            }
+            StringBuilder added = new StringBuilder();
+            if (last != '\n') {
+                added.append('\n'); // The last line had no terminator
+            }
+            for (String line : lines) {
+                added.append(line).append('\n');
+            }
+            size += write(out, ByteBuffer.wrap(added.toString().getBytes(StandardCharsets.UTF_8)), crc);
+            out.force(false);
+        }
+        return size;
+    }
+
+    private static int write(FileChannel out, ByteBuffer buffer, CRC32 crc) throws IOException {
+        crc.update(buffer.duplicate());
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return length;
+    }
+
+    /**
+     * Works out which logged lines are not yet in the knowledge base file. If
+     * the log holds a checkpoint mark and the file is the one the mark
+     * describes, the lines before the mark were written into the file, apart
+     * from any the file could not hold; otherwise the mark is ignored.
+     *
+     * @param records The payload of every record in the log.
+     * @return The lines still to be replayed, oldest first.
+     * @throws IOException If the knowledge base file cannot be read.
+     */
+    private List<String> pending(List<String> records) throws IOException {
+        int mark = -1;
+        for (int i = records.size() - 1; i >= 0 && mark < 0; i--) {
+            if (records.get(i).startsWith(MARK)) {
+                mark = i;
+            }
+        }
+        boolean inBase = mark >= 0 && describesBase(records.get(mark));
+        List<String> pending = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            String line = records.get(i);
+            if (!line.startsWith(MARK) && (!inBase || i > mark || !KbFile.isWellFormed(line))) {
+                pending.add(line);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Checks whether the knowledge base file has the size and checksum
+     * recorded in a checkpoint mark.
+     */
+    private boolean describesBase(String mark) throws IOException {
+        String[] parts = mark.substring(MARK.length()).split("\t");
+        if (parts.length != 2 || !Files.exists(base)) {
+            return false;
+        }
+        try {
+            if (Files.size(base) != Long.parseLong(parts[0])) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                while (in.read(buffer) > 0) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            }
+            return crc.getValue() == Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the log with one holding the given lines. The new log is forced
+     * and moved over the old one, so a crash leaves one complete log or the
+     * other. If the new log cannot be written the old one stays in use, which
+     * is safe because its lines are worked out again from any mark it holds.
+     * If it cannot be reopened after the move, every later append fails
+     * rather than writing to the replaced file.
+     *
+     * @param lines The lines to keep, oldest first.
+     */
+    private void rewrite(List<String> lines) {
+        Path temp = Path.of(path + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (String line : lines) {
+                    ByteBuffer buffer = ByteBuffer.wrap(encode(line));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(false);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not rewrite the addition log: " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // The next rewrite truncates it
+            }
+            return; // The old log is still in place and open
+        }
+        FileChannel old = channel;
+        try {
+            FileChannel reopened = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            reopened.position(reopened.size());
+            channel = reopened;
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Could not reopen the addition log after a checkpoint: " + e.getMessage());
+            return; // Keep the old channel so close still works
+        }
+        try {
+            old.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the old addition log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads records from the start of a log until the end or the first record
+     * that is incomplete or fails its checksum.
+     *
+     * @param channel The log to read.
+     * @param lines   Receives the payload of each good record.
+     * @return The offset just past the last good record.
+     * @throws IOException If the log cannot be read.
+     */
+    private static long readRecords(FileChannel channel, List<String> lines) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long offset = 0;
+        long size = channel.size();
+        while (offset + HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || offset + HEADER_BYTES + length > size) {
+                break; // Torn write at the end of the log
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining() && channel.read(payload, offset + HEADER_BYTES + payload.position()) > 0) {
+                // Keep reading until the payload is complete
+            }
+            if (checksum(payload.array()) != checksum) {
+                break;
+            }
+            lines.add(new String(payload.array(), StandardCharsets.UTF_8));
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private static byte[] encode(String line) {
+        byte[] payload = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        return record.array();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -1,14 +1,19 @@
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * A program to manage a knowledge base using an array.
  */
 public class GenericsKbArrayApp {
-    private static String[] arrFile; // Array to hold data from file
+    private static KbColumns kb; // Parsed columns of data from file
+    private static WordIndex wordIndex; // Words of each term to entry indexes
+    private static AdditionLog log; // Durable record of statements added since the file was written
+    private static final QueryCache cache = new QueryCache(1 << 20); // Recent term search results
 
     /**
      * Counts the number of lines in a file.
@@ -17,45 +22,167 @@ public class GenericsKbArrayApp {
      * @return The number of lines in the file.
      */
     public static int NumLines(String fileName) {
-        int lines = 0;
-        String file = fileName;
         try {
-            FileReader fileReader = new FileReader(file);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-
-            while (bufferedReader.readLine() != null) {
-                lines++;
-            }
-            bufferedReader.close();
+            return KbFile.open(fileName).size();
         } catch (IOException e) {
             System.err.println("Error reading the file: " + e.getMessage());
+            return 0;
         }
-        return lines;
     }
 
     /**
-     * Populates an array with lines from a file.
+     * Populates an array with lines from a file. The file is memory-mapped and
+     * scanned once, so the array is sized and filled without reading it twice.
      * 
      * @param fileName The name of the file to read lines from.
      * @return An array containing the lines from the file.
      */
     public static String[] PopulateArray(String fileName) {
-        int numLines = NumLines(fileName);
-        String[] arrFile = new String[numLines];
         try {
-            FileReader fileReader = new FileReader(fileName);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
+            KbFile file = KbFile.open(fileName);
+            String[] arrFile = new String[file.size()];
+            for (int i = 0; i < arrFile.length; i++) {
+                arrFile[i] = file.line(i);
+            }
+            return arrFile;
+        } catch (IOException e) {
+            System.err.println("Error reading the file: " + e.getMessage());
+            return new String[0];
+        }
+    }
 
-            String line;
-            int index = 0;
-            while ((line = bufferedReader.readLine()) != null) {
-                arrFile[index++] = line;
+    /**
+     * Parses every well-formed line of a file into a columnar store, warning
+     * about the lines that are skipped.
+     * 
+     * @param fileName The name of the file to read lines from.
+     * @return The populated store, or an empty store if the file cannot be read.
+     */
+    public static KbColumns PopulateColumns(String fileName) {
+        try {
+            KbFile file = KbFile.open(fileName);
+            List<String> warnings = file.malformedWarnings(10);
+            if (!warnings.isEmpty()) {
+                System.out.println("\nSkipped malformed lines in " + fileName + ":");
+                for (String warning : warnings) {
+                    System.out.println("  " + warning);
+                }
             }
-            bufferedReader.close();
+            return KbColumns.fromFile(file);
         } catch (IOException e) {
             System.err.println("Error reading the file: " + e.getMessage());
+            return new KbColumns(0);
         }
-        return arrFile;
+    }
+
+    /**
+     * Opens the addition log for a knowledge base file and applies every
+     * statement it holds on top of the loaded columns.
+     * 
+     * @param fileName The name of the knowledge base file.
+     */
+    public static void OpenLog(String fileName) {
+        CloseLog();
+        List<String> replayed = new ArrayList<>();
+        try {
+            log = AdditionLog.open(fileName, replayed, false); // Repeated additions are kept
+        } catch (IOException e) {
+            System.err.println("Error opening the addition log: " + e.getMessage());
+            return;
+        }
+        for (String line : replayed) {
+            String[] parts = line.split("\t");
+            if (parts.length == 3) {
+                try {
+                    Float.parseFloat(parts[2]);
+                    wordIndex.add(kb.add(parts[0], parts[1], parts[2]), parts[0]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping logged statement with invalid confidence: " + line);
+                }
+            }
+        }
+        if (!replayed.isEmpty()) {
+            System.out.println("\n" + replayed.size() + " added statements restored from the log.");
+        }
+    }
+
+    /**
+     * Closes the addition log, if one is open.
+     */
+    public static void CloseLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the addition log: " + e.getMessage());
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Checks whether a word appears as a whole word in a term, that is, bounded
+     * by spaces or the ends of the term.
+     * 
+     * @param term The term to look in.
+     * @param word The word to look for.
+     * @return true if the word appears as a whole word.
+     */
+    static boolean ContainsWord(String term, String word) {
+        int from = term.indexOf(word);
+        while (from >= 0) {
+            int end = from + word.length();
+            if ((from == 0 || term.charAt(from - 1) == ' ') && (end == term.length() || term.charAt(end) == ' ')) {
+                return true;
+            }
+            from = from < term.length() ? term.indexOf(word, from + 1) : -1;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the entries whose term contains a search term as whole words,
+     * answering repeated queries from the cache.
+     * 
+     * @param searchTerm The term to search for.
+     * @return The matching entry indexes, in file order. The array is shared
+     *         with the cache and must not be modified.
+     */
+    public static int[] MatchingEntries(String searchTerm) {
+        int[] cached = cache.get(searchTerm);
+        if (cached != null) {
+            return cached;
+        }
+        int[] matches = FindMatchingEntries(searchTerm);
+        cache.put(searchTerm, matches);
+        return matches;
+    }
+
+    /**
+     * Finds the entries whose term contains a search term as whole words.
+     * 
+     * @param searchTerm The term to search for.
+     * @return The matching entry indexes, in file order.
+     */
+    private static int[] FindMatchingEntries(String searchTerm) {
+        int[] candidates = wordIndex.candidates(searchTerm);
+        if (candidates != null && searchTerm.indexOf(' ') < 0) {
+            return candidates; // Single-word index hits are already whole-word matches
+        }
+        if (candidates == null) {
+            // The query cannot be split into words, so fall back to a full scan
+            candidates = new int[kb.size()];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+        }
+        int count = 0;
+        for (int i : candidates) {
+            if (ContainsWord(kb.term(i), searchTerm)) {
+                candidates[count++] = i;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
     }
 
     /**
@@ -64,28 +191,55 @@ public class GenericsKbArrayApp {
      * @param searchTerm The term to search for.
      */
     public static void SearchByTerm(String searchTerm) {
-        if (arrFile == null) {
+        if (kb == null) {
             System.out.println("Knowledge base has not been loaded yet.");
             return;
         }
-        boolean found = false;
-        for (String entry : arrFile) {
-            String[] parts = entry.split("\t");
-            if (parts.length >= 3 && (parts[0].equals(searchTerm) || 
-            parts[0].startsWith(searchTerm + " ") || 
-            parts[0].endsWith(" " + searchTerm) || 
-            parts[0].contains(" " + searchTerm + " "))) {
-                String statement = parts[1];
-                String confidence = parts[2];
-                System.out.println("\nStatement found for " + parts[0] + ": " + statement + " (Confidence score: " + confidence + ")\n");
-                found = true;
-            }
+        int[] matches = MatchingEntries(searchTerm);
+        for (int i : matches) {
+            System.out.println("\nStatement found for " + kb.term(i) + ": " + kb.statement(i) + " (Confidence score: " + kb.confidenceText(i) + ")\n");
         }
-        if (!found) {
+        if (matches.length == 0) {
             System.out.println("Term '" + searchTerm + "' not found in the knowledge base.");
         }
     }
 
+    /**
+     * Prints the statements with the highest confidence scores for a term.
+     * 
+     * @param searchTerm    The term to search for.
+     * @param k             The maximum number of statements to print.
+     * @param minConfidence The lowest confidence score to include.
+     * @param wholeWord     Whether to match the term as whole words within
+     *                      longer terms, as SearchByTerm does, rather than only
+     *                      exactly.
+     */
+    public static void TopByConfidence(String searchTerm, int k, float minConfidence, boolean wholeWord) {
+        if (kb == null) {
+            System.out.println("Knowledge base has not been loaded yet.");
+            return;
+        }
+        int[] matches = MatchingEntries(searchTerm);
+        if (!wholeWord) {
+            int[] exact = new int[matches.length];
+            int count = 0;
+            for (int i : matches) {
+                if (kb.term(i).equals(searchTerm)) {
+                    exact[count++] = i;
+                }
+            }
+            matches = Arrays.copyOf(exact, count);
+        }
+        int[] top = TopConfidence.select(kb, matches, k, minConfidence);
+        for (int rank = 0; rank < top.length; rank++) {
+            int i = top[rank];
+            System.out.println((rank + 1) + ". " + kb.term(i) + ": " + kb.statement(i) + " (Confidence score: " + kb.confidenceText(i) + ")");
+        }
+        if (top.length == 0) {
+            System.out.println("No statements found for '" + searchTerm + "' at or above the minimum confidence.");
+        }
+    }
+
     /**
      * Searches for an item in the knowledge base by term and statement.
      * 
@@ -94,16 +248,14 @@ public class GenericsKbArrayApp {
      */
 
     public static void SearchByTermAndStatement(String searchTerm, String searchStatement) {
-        if (arrFile == null) {
+        if (kb == null) {
             System.out.println("Knowledge base has not been loaded yet.");
             return;
         }
         boolean found = false;
-        for (String entry : arrFile) {
-            String[] parts = entry.split("\t");
-            if (parts.length >= 3 && parts[0].equals(searchTerm) && parts[1].equals(searchStatement)) {
-                String confidence = parts[2];
-                System.out.println("\nThe statement was found and has a confidence score of  " + confidence + ".\n");
+        for (int i = 0; i < kb.size(); i++) {
+            if (kb.term(i).equals(searchTerm) && kb.statement(i).equals(searchStatement)) {
+                System.out.println("\nThe statement was found and has a confidence score of  " + kb.confidenceText(i) + ".\n");
                 found = true;
                 break; // No need to continue searching if found
             }
@@ -129,21 +281,27 @@ public class GenericsKbArrayApp {
                 "2. Add a new statement to the knowledge base\r\n" + //
                 "3. Search for an item in the knowledge base by term\r\n" + //
                 "4. Search for a item in the knowledge base by term and sentence\r\n" + //
-                "5. Quit\r\n\n" + //
+                "5. Show the statements with the highest confidence for a term\r\n" + //
+                "6. Quit\r\n\n" + //
                 "Enter your choice: ";
 
-        while (!menuInput.equals("5")) {
+        while (!menuInput.equals("6")) {
             System.out.print(menu);
             menuInput = keyboard.nextLine().trim();
 
             if (menuInput.equals("1")) {
                 System.out.print("Enter file name: ");
                 dataInput = keyboard.nextLine();
-                arrFile = PopulateArray(dataInput);
+                kb = PopulateColumns(dataInput);
+                wordIndex = WordIndex.build(kb);
+                cache.clear();
+                if (Files.exists(Path.of(dataInput))) {
+                    OpenLog(dataInput);
+                }
                 System.out.println("\n Knowledge base loaded successfully.\n");
 
             } else if (menuInput.equals("2")) {
-                if (arrFile == null) {
+                if (kb == null) {
                     System.out.println("\nKnowledge base has not been loaded yet.\n");
                     System.out.print(menu);
                     continue; // Skip adding the new element
@@ -156,15 +314,28 @@ public class GenericsKbArrayApp {
                 String statement = dataInput;
                 System.out.print("Enter the confidence score: ");
                 dataInput = keyboard.nextLine();
-                String confidence = dataInput;
-                String newElement = term + "\t" + statement + "\t" + confidence;
-                // Append the new element to the array
-                arrFile = Arrays.copyOf(arrFile, arrFile.length + 1);
-                arrFile[arrFile.length - 1] = newElement;
+                String confidence = dataInput.trim();
+                try {
+                    Float.parseFloat(confidence);
+                } catch (NumberFormatException e) {
+                    System.out.println("\nInvalid confidence score: " + dataInput + "\n");
+                    continue; // Skip adding the new element
+                }
+                // Log the new element durably before appending it to the columns
+                if (log != null) {
+                    try {
+                        log.append(term + "\t" + statement + "\t" + confidence);
+                    } catch (IOException e) {
+                        System.out.println("\nCould not save the statement: " + e.getMessage() + "\n");
+                        continue; // Skip adding the new element
+                    }
+                }
+                wordIndex.add(kb.add(term, statement, confidence), term);
+                cache.invalidate(query -> ContainsWord(term, query)); // Queries the new term would match
                 System.out.println("\nStatement for term " + term + " has been updated.\n");
 
             } else if (menuInput.equals("3")) {
-                if (arrFile == null) {
+                if (kb == null) {
                     System.out.println("\nKnowledge base has not been loaded yet.\n");
                     System.out.print(menu);
                     continue; // Skip adding the new element
@@ -174,7 +345,7 @@ public class GenericsKbArrayApp {
                 SearchByTerm(dataInput);
 
             } else if (menuInput.equals("4")) {
-                if (arrFile == null) {
+                if (kb == null) {
                     System.out.println("\nKnowledge base has not been loaded yet.\n");
                     System.out.print(menu);
                     continue; // Skip adding the new element
@@ -186,8 +357,34 @@ public class GenericsKbArrayApp {
                 dataInput = keyboard.nextLine();
                 String statement = dataInput;
                 SearchByTermAndStatement(term, statement);
+
+            } else if (menuInput.equals("5")) {
+                if (kb == null) {
+                    System.out.println("\nKnowledge base has not been loaded yet.\n");
+                    System.out.print(menu);
+                    continue; // Skip searching
+                }
+                System.out.print("Enter the term: ");
+                String term = keyboard.nextLine();
+                System.out.print("Match the term as whole words in longer terms? (y/n): ");
+                boolean wholeWord = keyboard.nextLine().trim().equalsIgnoreCase("y");
+                System.out.print("Enter the number of statements to show: ");
+                dataInput = keyboard.nextLine();
+                System.out.print("Enter the minimum confidence score (blank for none): ");
+                String minInput = keyboard.nextLine().trim();
+                try {
+                    int k = Integer.parseInt(dataInput.trim());
+                    float minConfidence = minInput.isEmpty() ? Float.NEGATIVE_INFINITY : Float.parseFloat(minInput);
+                    System.out.println();
+                    TopByConfidence(term, k, minConfidence, wholeWord);
+                    System.out.println();
+                } catch (NumberFormatException e) {
+                    System.out.println("\nInvalid number: " + e.getMessage() + "\n");
+                }
             }
         }
+        System.out.println("Query cache: " + cache);
+        CloseLog();
         keyboard.close();
     }
 }
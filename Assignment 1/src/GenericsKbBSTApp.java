@@ -1,158 +1,65 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
- * Represents a node in a binary tree.
- */
-class TreeNode {
-    String data;
-    TreeNode left;
-    TreeNode right;
-
-    /**
-     * Constructs a TreeNode with the given data.
-     * 
-     * @param data The data to be stored in the node.
-     */
-    public TreeNode(String data) {
-        this.data = data;
-        left = right = null;
-    }
-}
-
-/**
- * Represents a binary search tree.
+ * Main class to demonstrate the binary search tree application.
  */
-class BinarySearchTree {
-    TreeNode root;
-
-    /**
-     * Constructs an empty binary search tree.
-     */
-    public BinarySearchTree() {
-        root = null;
-    }
+public class GenericsKbBSTApp {
+    private static SnapshotBST bst; // Readers query snapshots while statements are added
+    private static RadixTree terms; // Lines by term, for prefix searches; also copy-on-write
+    private static boolean knowledgeBaseLoaded = false;
+    private static AdditionLog log; // Durable record of statements added since the file was written
 
     /**
-     * Inserts a new data into the binary search tree.
+     * Inserts a line into both the tree and the term index.
      * 
-     * @param data The data to be inserted.
+     * @param line The line to add, {@code term\tstatement\tconfidence}.
      */
-    public void insert(String data) {
-        root = insertRec(root, data);
-    }
-
-    private TreeNode insertRec(TreeNode root, String data) {
-        if (root == null) {
-            root = new TreeNode(data);
-            return root;
-        }
-
-        if (data.compareTo(root.data) < 0) {
-            root.left = insertRec(root.left, data);
-        } else if (data.compareTo(root.data) > 0) {
-            root.right = insertRec(root.right, data);
-        }
-
-        return root;
+    private static void addLine(String line) {
+        int tab = line.indexOf('\t');
+        bst.insert(line);
+        terms.insert(tab >= 0 ? line.substring(0, tab) : line, line);
     }
 
     /**
-     * Searches for a term in the binary search tree.
+     * Opens the addition log for a knowledge base file and applies every
+     * statement it holds on top of the loaded tree.
      * 
-     * @param term The term to be searched.
-     * @return true if the term is found, false otherwise.
+     * @param fileName The name of the knowledge base file.
      */
-    public boolean search(String term) {
-        return searchRec(root, term);
-    }
-
-    private boolean searchRec(TreeNode root, String term) {
-        if (root == null) {
-            return false;
-        }
-
-        String[] parts = root.data.split("\t");
-        String termPart = parts[0]; // Extract the term part from the data
-
-        if (termPart.equals(term) || termPart.startsWith(term + " ")) {
-            System.out.println(root.data); // Print the entire line
-            return true;
-        }
-
-        if (term.compareTo(termPart) < 0) {
-            return searchRec(root.left, term);
-        }
-
-        return searchRec(root.right, term);
-    }
-
-    /**
-     * Searches for an item in the binary search tree by term and sentence.
-     * 
-     * @param term     The term to be searched.
-     * @param sentence The sentence to be searched.
-     * @return true if the item is found, false otherwise.
-     */
-    public boolean searchByTermAndSentence(String term, String sentence) {
-        return searchRecByTermAndSentence(root, term, sentence);
-    }
-
-    private boolean searchRecByTermAndSentence(TreeNode root, String term, String sentence) {
-        if (root == null) {
-            System.out.println("\nTerm and statement: '" + term + "' and '" + sentence + "' not found.\n");
-            return false;
+    private static void openLog(String fileName) {
+        closeLog();
+        List<String> replayed = new ArrayList<>();
+        try {
+            log = AdditionLog.open(fileName, replayed, true); // The tree keeps one copy of each line
+        } catch (IOException e) {
+            System.out.println("\nError opening the addition log: " + e.getMessage() + "\n");
+            return;
         }
-
-        String[] parts = root.data.split("\t");
-        String termPart = parts[0]; // Extract the term part from the data
-        String statementPart = parts[1]; // Extract the statement part from the data
-
-        if (termPart.equals(term) && statementPart.equals(sentence)) {
-            System.out.println("\nStatement found: " + statementPart + " (Confidence score: " + parts[2] + ")\n");
-            return true;
+        for (String line : replayed) {
+            addLine(line);
         }
-
-        if (term.compareTo(termPart) < 0) {
-            return searchRecByTermAndSentence(root.left, term, sentence);
+        if (!replayed.isEmpty()) {
+            System.out.println(replayed.size() + " added statements restored from the log.\n");
         }
-
-        return searchRecByTermAndSentence(root.right, term, sentence);
     }
 
     /**
-     * Prints the terms in the binary search tree in inorder traversal.
+     * Closes the addition log, if one is open.
      */
-    public void inOrder(String term) {
-        boolean found = inOrderRec(root, term);
-        if (!found) {
-            System.out.println("Term '" + term + "' not found in the knowledge base.");
-        }
-    }
-
-    private boolean inOrderRec(TreeNode root, String term) {
-        boolean found = false;
-        if (root != null) {
-            found |= inOrderRec(root.left, term);
-            String[] parts = root.data.split("\t");
-            String termPart = parts[0]; // Extract the term part from the data
-            if (termPart.equals(term) || termPart.startsWith(term + " ")) {
-                System.out.println(root.data); // Print the entire line
-                found = true;
+    private static void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.out.println("\nError closing the addition log: " + e.getMessage() + "\n");
             }
-            found |= inOrderRec(root.right, term);
+            log = null;
         }
-        return found;
     }
-}
-
-/**
- * Main class to demonstrate the binary search tree application.
- */
-public class GenericsKbBSTApp {
-    private static BinarySearchTree bst;
-    private static boolean knowledgeBaseLoaded = false;
 
     /**
      * Loads the knowledge base from the specified file.
@@ -161,16 +68,46 @@ public class GenericsKbBSTApp {
      */
     private static void loadKnowledgeBase(String fileName) {
         try {
-            Scanner fileScanner = new Scanner(new File(fileName));
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine();
-                bst.insert(line); // Assuming each line represents a statement in the knowledge base
+            KbFile file = KbFile.open(fileName);
+            List<String> warnings = file.malformedWarnings(10);
+            if (!warnings.isEmpty()) {
+                System.out.println("\nSkipped malformed lines in " + fileName + ":");
+                for (String warning : warnings) {
+                    System.out.println("  " + warning);
+                }
+            }
+            for (int i = 0; i < file.size(); i++) {
+                if (!file.isWellFormed(i)) {
+                    continue; // Only lines with a term, a statement and a confidence score are kept
+                }
+                String line = file.line(i); // Assuming each line represents a statement in the knowledge base
+                bst.insert(line);
+                terms.insert(file.term(i), line);
             }
             System.out.println("\nKnowledge base loaded successfully.\n");
             knowledgeBaseLoaded = true;
-            fileScanner.close();
-        } catch (FileNotFoundException e) {
+            openLog(fileName);
+        } catch (NoSuchFileException e) {
             System.out.println("\nFile not found: " + fileName + "\n");
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Prints, in sorted order, every line whose term is the given term or
+     * starts with it as a whole word. Both lookups read the same snapshot of
+     * the term index, so a statement added meanwhile is seen by both or by
+     * neither.
+     * 
+     * @param term The term to search for.
+     */
+    private static void searchByTerm(String term) {
+        RadixTree.Snapshot snapshot = terms.snapshot();
+        int found = snapshot.exact(term, Integer.MAX_VALUE, System.out::println);
+        found += snapshot.withPrefix(term + " ", Integer.MAX_VALUE, System.out::println);
+        if (found == 0) {
+            System.out.println("Term '" + term + "' not found in the knowledge base.");
         }
     }
 
@@ -180,7 +117,8 @@ public class GenericsKbBSTApp {
      * @param args The command line arguments.
      */
     public static void main(String[] args) {
-        bst = new BinarySearchTree();
+        bst = new SnapshotBST();
+        terms = new RadixTree();
         Scanner keyboard = new Scanner(System.in);
 
         String menuInput = "";
@@ -214,8 +152,16 @@ public class GenericsKbBSTApp {
                 System.out.print("Enter the confidence score: ");
                 String confidence = keyboard.nextLine();
                 String newElement = term + "\t" + statement + "\t" + confidence;
-                // Add new statement to the binary search tree
-                bst.insert(newElement);
+                // Log the new statement durably, then add it to the binary search tree
+                if (log != null) {
+                    try {
+                        log.append(newElement);
+                    } catch (IOException e) {
+                        System.out.println("\nCould not save the statement: " + e.getMessage() + "\n");
+                        continue; // Skip adding the new element
+                    }
+                }
+                addLine(newElement);
                 System.out.println("\nStatement for term " + term + " has been updated.\n");
 
             } else if (menuInput.equals("3")) {
@@ -227,7 +173,7 @@ public class GenericsKbBSTApp {
                 String searchTerm = keyboard.nextLine();
                 System.out.println("");
                 // Search for item in the knowledge base by term
-                bst.inOrder(searchTerm); // Example: Print all statements, replace with search logic
+                searchByTerm(searchTerm);
                 System.out.println("");
 
             } else if (menuInput.equals("4")) {
@@ -240,11 +186,11 @@ public class GenericsKbBSTApp {
                 System.out.print("Enter the statement to search for: ");
                 String searchStatement = keyboard.nextLine();
                 // Search for item in the knowledge base by term and sentence
-                bst.searchByTermAndSentence(term, searchStatement); // Example: Print all statements, replace with
-                                                                    // search logic
+                bst.snapshot().searchByTermAndSentence(term, searchStatement);
             }
         }
 
+        closeLog();
         keyboard.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * A knowledge base stored column by column. Each line is parsed once into
+ * parallel arrays of terms, statements and confidence scores, so searches can
+ * scan a single column without splitting lines. Confidence scores are kept
+ * both as numbers, for ranking, and as the text they were written with, for
+ * display.
+ */
+public class KbColumns {
+    private String[] terms;
+    private String[] statements;
+    private float[] confidences;
+    private String[] confidenceTexts;
+    private int size = 0;
+
+    /**
+     * Constructs an empty store with room for the given number of entries.
+     *
+     * @param capacity The initial capacity.
+     */
+    public KbColumns(int capacity) {
+        capacity = Math.max(capacity, 16);
+        terms = new String[capacity];
+        statements = new String[capacity];
+        confidences = new float[capacity];
+        confidenceTexts = new String[capacity];
+    }
+
+    /**
+     * Builds a store from every well-formed line of a knowledge base file.
+     *
+     * @param file The indexed file to read.
+     * @return The populated store.
+     */
+    public static KbColumns fromFile(KbFile file) {
+        KbColumns columns = new KbColumns(file.size());
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                columns.add(file.term(i), file.statement(i), file.confidence(i));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Appends an entry, growing the columns geometrically when full.
+     *
+     * @param term       The term.
+     * @param statement  The statement.
+     * @param confidence The confidence score as written; it ranks as NaN if it
+     *                   is not a number.
+     * @return The index of the new entry.
+     */
+    public int add(String term, String statement, String confidence) {
+        if (size == terms.length) {
+            int capacity = size * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            statements = Arrays.copyOf(statements, capacity);
+            confidences = Arrays.copyOf(confidences, capacity);
+            confidenceTexts = Arrays.copyOf(confidenceTexts, capacity);
+        }
+        terms[size] = term;
+        statements[size] = statement;
+        confidences[size] = parseConfidence(confidence);
+        confidenceTexts[size] = confidence;
+        return size++;
+    }
+
+    /**
+     * Returns the number of entries in the store.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the term of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The term.
+     */
+    public String term(int index) {
+        return terms[index];
+    }
+
+    /**
+     * Returns the statement of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The statement.
+     */
+    public String statement(int index) {
+        return statements[index];
+    }
+
+    /**
+     * Returns the confidence score of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The confidence score.
+     */
+    public float confidence(int index) {
+        return confidences[index];
+    }
+
+    /**
+     * Returns the confidence score of an entry as it was written.
+     *
+     * @param index The index of the entry.
+     * @return The confidence score text.
+     */
+    public String confidenceText(int index) {
+        return confidenceTexts[index];
+    }
+
+    private static float parseConfidence(String text) {
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
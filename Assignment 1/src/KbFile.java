@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A GenericsKB file mapped into memory and indexed in a single pass.
+ * Each line is recorded by the byte offsets of its start, its tab separators
+ * and its end, so the term, statement and confidence fields can be decoded
+ * one at a time without building a String for the whole line. Large files
+ * are cut into ranges that end on line boundaries and indexed in parallel.
+ */
+public class KbFile {
+    /** Files are only split when each range would have at least this many bytes. */
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+    private final MappedByteBuffer buffer;
+    private int[] lineStart;
+    private int[] firstTab; // -1 if the line has no tab
+    private int[] secondTab; // -1 if the line has fewer than two tabs
+    private int[] confidenceEnd; // Third tab or end of line
+    private int[] lineEnd; // Exclusive, without the line terminator
+    private int lineCount = 0;
+    private int[] malformed; // Indexes of lines that are not well formed
+
+    private KbFile(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Maps a knowledge base file into memory and finds its line and tab
+     * boundaries.
+     *
+     * @param fileName The name of the file to open.
+     * @return The indexed file.
+     * @throws IOException If the file cannot be opened or is too large to map.
+     */
+    public static KbFile open(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + fileName);
+            }
+            KbFile file = new KbFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            file.index((int) size);
+            return file;
+        }
+    }
+
+    /**
+     * Finds the boundaries of every line. The file is cut into one range per
+     * processor, each starting just after a newline, the ranges are scanned
+     * in parallel, and their lines are joined back together in file order.
+     *
+     * @param size The number of bytes in the file.
+     */
+    private void index(int size) {
+        int chunks = (int) Math.max(1,
+                Math.min(Runtime.getRuntime().availableProcessors(), (long) size / MIN_CHUNK_BYTES));
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = size;
+        for (int c = 1; c < chunks; c++) {
+            int b = Math.max(bounds[c - 1], (int) ((long) size * c / chunks));
+            while (b < size && b > 0 && buffer.get(b - 1) != '\n') {
+                b++;
+            }
+            bounds[c] = b;
+        }
+        Chunk[] parts = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> scan(bounds[c], bounds[c + 1]))
+                .toArray(Chunk[]::new);
+
+        int lines = 0;
+        int bad = 0;
+        for (Chunk part : parts) {
+            lines += part.count;
+            bad += part.malformedCount;
+        }
+        lineStart = new int[lines];
+        firstTab = new int[lines];
+        secondTab = new int[lines];
+        confidenceEnd = new int[lines];
+        lineEnd = new int[lines];
+        malformed = new int[bad];
+        bad = 0;
+        for (Chunk part : parts) {
+            System.arraycopy(part.lineStart, 0, lineStart, lineCount, part.count);
+            System.arraycopy(part.firstTab, 0, firstTab, lineCount, part.count);
+            System.arraycopy(part.secondTab, 0, secondTab, lineCount, part.count);
+            System.arraycopy(part.confidenceEnd, 0, confidenceEnd, lineCount, part.count);
+            System.arraycopy(part.lineEnd, 0, lineEnd, lineCount, part.count);
+            for (int i = 0; i < part.malformedCount; i++) {
+                malformed[bad++] = lineCount + part.malformed[i];
+            }
+            lineCount += part.count;
+        }
+    }
+
+    /**
+     * Scans a range of the mapped bytes that starts at the beginning of a
+     * line, recording the boundaries of every line that starts in it.
+     *
+     * @param from The first byte of the range.
+     * @param to   The byte after the range.
+     * @return The lines of the range.
+     */
+    private Chunk scan(int from, int to) {
+        Chunk chunk = new Chunk();
+        int start = from;
+        int tab1 = -1;
+        int tab2 = -1;
+        int tab3 = -1;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\t') {
+                if (tab1 < 0) {
+                    tab1 = i;
+                } else if (tab2 < 0) {
+                    tab2 = i;
+                } else if (tab3 < 0) {
+                    tab3 = i;
+                }
+            } else if (b == '\n') {
+                int end = (i > start && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                chunk.add(start, tab1, tab2, tab3, end);
+                start = i + 1;
+                tab1 = tab2 = tab3 = -1;
+            }
+        }
+        if (start < to) { // Last line has no terminator
+            int end = buffer.get(to - 1) == '\r' ? to - 1 : to;
+            chunk.add(start, tab1, tab2, tab3, end);
+        }
+        return chunk;
+    }
+
+    /**
+     * The line boundaries found in one range of the file.
+     */
+    private static class Chunk {
+        int[] lineStart = new int[1024];
+        int[] firstTab = new int[1024];
+        int[] secondTab = new int[1024];
+        int[] confidenceEnd = new int[1024];
+        int[] lineEnd = new int[1024];
+        int count = 0;
+        int[] malformed = new int[16]; // Indexes within the chunk
+        int malformedCount = 0;
+
+        void add(int start, int tab1, int tab2, int tab3, int end) {
+            if (count == lineStart.length) {
+                int capacity = count * 2;
+                lineStart = Arrays.copyOf(lineStart, capacity);
+                firstTab = Arrays.copyOf(firstTab, capacity);
+                secondTab = Arrays.copyOf(secondTab, capacity);
+                confidenceEnd = Arrays.copyOf(confidenceEnd, capacity);
+                lineEnd = Arrays.copyOf(lineEnd, capacity);
+            }
+            lineStart[count] = start;
+            firstTab[count] = tab1;
+            secondTab[count] = tab2;
+            confidenceEnd[count] = tab3 >= 0 ? tab3 : end;
+            lineEnd[count] = end;
+            if (!(tab2 >= 0 && tab3 < 0 && tab2 + 1 < end)) {
+                if (malformedCount == malformed.length) {
+                    malformed = Arrays.copyOf(malformed, malformedCount * 2);
+                }
+                malformed[malformedCount++] = count;
+            }
+            count++;
+        }
+    }
+
+    /**
+     * Returns the number of lines in the file.
+     *
+     * @return The number of lines.
+     */
+    public int size() {
+        return lineCount;
+    }
+
+    /**
+     * Checks whether a line has a term, a statement and a confidence score,
+     * and nothing more.
+     *
+     * @param line The index of the line.
+     * @return true if the line has exactly three tab-separated fields.
+     */
+    public boolean isWellFormed(int line) {
+        return secondTab[line] >= 0 && confidenceEnd[line] == lineEnd[line]
+                && secondTab[line] + 1 < confidenceEnd[line];
+    }
+
+    /**
+     * Checks whether a line of text would be well formed as a line of a
+     * knowledge base file: a term, a statement and a confidence score, and
+     * nothing more.
+     *
+     * @param line The line, without its terminator.
+     * @return true if loading the line from a file would keep it.
+     */
+    public static boolean isWellFormed(String line) {
+        int tab1 = line.indexOf('\t');
+        int tab2 = tab1 >= 0 ? line.indexOf('\t', tab1 + 1) : -1;
+        return tab2 >= 0 && tab2 + 1 < line.length() && line.indexOf('\t', tab2 + 1) < 0
+                && line.indexOf('\n') < 0 && !line.endsWith("\r");
+    }
+
+    /**
+     * Returns the lines that are not well formed.
+     *
+     * @return The indexes of the lines, in file order. Line numbers are one
+     *         more than the indexes.
+     */
+    public int[] malformedLines() {
+        return malformed.clone();
+    }
+
+    /**
+     * Describes the lines that are not well formed, for warning the user
+     * about the lines that loading will skip.
+     *
+     * @param limit The most lines to describe individually.
+     * @return One message per line, plus a count of any lines beyond the
+     *         limit; empty if every line is well formed.
+     */
+    public List<String> malformedWarnings(int limit) {
+        List<String> warnings = new ArrayList<>();
+        for (int i = 0; i < malformed.length && i < limit; i++) {
+            int line = malformed[i];
+            String problem = firstTab[line] < 0 || secondTab[line] < 0 ? "fewer than three tab-separated fields"
+                    : confidenceEnd[line] != lineEnd[line] ? "more than three tab-separated fields"
+                    : "no confidence score";
+            warnings.add("Line " + (line + 1) + " has " + problem + ".");
+        }
+        if (malformed.length > limit) {
+            warnings.add((malformed.length - limit) + " more malformed lines.");
+        }
+        return warnings;
+    }
+
+    /**
+     * Returns a whole line as it appears in the file.
+     *
+     * @param line The index of the line.
+     * @return The line without its terminator.
+     */
+    public String line(int line) {
+        return decode(lineStart[line], lineEnd[line]);
+    }
+
+    /**
+     * Returns the term field of a line, or the whole line if it has no tab.
+     *
+     * @param line The index of the line.
+     * @return The term.
+     */
+    public String term(int line) {
+        int end = firstTab[line] >= 0 ? firstTab[line] : lineEnd[line];
+        return decode(lineStart[line], end);
+    }
+
+    /**
+     * Compares the term fields of two lines by their UTF-8 bytes, read
+     * unsigned, without decoding either term.
+     *
+     * @param a The index of one line.
+     * @param b The index of the other line.
+     * @return A negative number, zero or a positive number as the first term
+     *         sorts before, equal to or after the second.
+     */
+    public int compareTerms(int a, int b) {
+        int i = lineStart[a];
+        int j = lineStart[b];
+        int endA = firstTab[a] >= 0 ? firstTab[a] : lineEnd[a];
+        int endB = firstTab[b] >= 0 ? firstTab[b] : lineEnd[b];
+        while (i < endA && j < endB) {
+            int cmp = Byte.toUnsignedInt(buffer.get(i++)) - Byte.toUnsignedInt(buffer.get(j++));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (endA - i) - (endB - j);
+    }
+
+    /**
+     * Returns the first four UTF-8 bytes of a line's term as a big-endian
+     * int, padded with zero bytes, so that comparing prefixes as unsigned
+     * ints agrees with compareTerms wherever the prefixes differ.
+     *
+     * @param line The index of the line.
+     * @return The term prefix.
+     */
+    public int termPrefix(int line) {
+        int end = firstTab[line] >= 0 ? firstTab[line] : lineEnd[line];
+        int prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            int at = lineStart[line] + i;
+            prefix = (prefix << 8) | (at < end ? Byte.toUnsignedInt(buffer.get(at)) : 0);
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the statement field of a line.
+     *
+     * @param line The index of the line.
+     * @return The statement, or null if the line has no statement field.
+     */
+    public String statement(int line) {
+        if (firstTab[line] < 0) {
+            return null;
+        }
+        int end = secondTab[line] >= 0 ? secondTab[line] : lineEnd[line];
+        return decode(firstTab[line] + 1, end);
+    }
+
+    /**
+     * Returns the confidence field of a line as text.
+     *
+     * @param line The index of the line.
+     * @return The confidence score, or null if the line has no confidence field.
+     */
+    public String confidence(int line) {
+        if (secondTab[line] < 0) {
+            return null;
+        }
+        return decode(secondTab[line] + 1, confidenceEnd[line]);
+    }
+
+    /**
+     * Returns the confidence field of a line as a number.
+     *
+     * @param line The index of the line.
+     * @return The confidence score, or NaN if it is missing or not a number.
+     */
+    public float confidenceValue(int line) {
+        String text = confidence(line);
+        if (text == null) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A least-recently-used cache of term search results. Each result is a list
+ * of entry indexes and is weighed by its length, so a few very broad queries
+ * cannot crowd out many narrow ones. Hits, misses and evictions are counted.
+ */
+public class QueryCache {
+    private final LinkedHashMap<String, int[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxWeight The most entry indexes, summed over all cached results,
+     *                  that the cache may hold.
+     */
+    public QueryCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached result for a query and marks it as recently used.
+     *
+     * @param query The search term.
+     * @return The cached entry indexes, or null on a miss. Callers must not
+     *         modify the array.
+     */
+    public synchronized int[] get(String query) {
+        int[] result = entries.get(query);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the result of a query, evicting the least recently used results
+     * until the cache is within its weight limit.
+     *
+     * @param query  The search term.
+     * @param result The entry indexes found. The array must not be modified
+     *               afterwards.
+     */
+    public synchronized void put(String query, int[] result) {
+        if (weigh(result) > maxWeight) {
+            return; // Would evict everything else and still not fit
+        }
+        int[] previous = entries.put(query, result);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(result);
+        Iterator<Map.Entry<String, int[]>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= weigh(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops every cached query that a change could affect.
+     *
+     * @param affected Returns true for the queries to drop.
+     */
+    public synchronized void invalidate(Predicate<String> affected) {
+        Iterator<Map.Entry<String, int[]>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, int[]> entry = it.next();
+            if (affected.test(entry.getKey())) {
+                weight -= weigh(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached query.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", cached queries="
+                + entries.size() + ", weight=" + weight + "/" + maxWeight;
+    }
+
+    /** Counts the key and bookkeeping as one, so empty results still have a cost. */
+    private static long weigh(int[] result) {
+        return result.length + 1L;
+    }
+}
@@ -0,0 +1,322 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A compressed radix tree over knowledge base terms. Each edge is labelled
+ * with a run of characters, and each node holds the lines whose term ends at
+ * that node, kept in sorted order. Prefix and autocomplete queries walk down
+ * the prefix once and then stream the matching subtree in sorted order, so
+ * their cost depends on the prefix length and the number of results rather
+ * than on the size of the knowledge base.
+ *
+ * <p>
+ * Like SnapshotBST, the tree is copy-on-write: an insert copies only the nodes
+ * on the path to the term and publishes the new root atomically, so readers
+ * query a Snapshot without taking a lock while another thread adds lines.
+ */
+public class RadixTree {
+    private final AtomicReference<RadixNode> root = new AtomicReference<>(
+            new RadixNode("", new RadixNode[0], new String[0]));
+
+    /**
+     * An immutable node reached by following an edge labelled with a run of
+     * characters. Nodes are never changed once published.
+     */
+    private static final class RadixNode {
+        final String label;
+        final RadixNode[] children; // Sorted by first character of label
+        final String[] lines; // Sorted lines whose term ends here
+
+        RadixNode(String label, RadixNode[] children, String[] lines) {
+            this.label = label;
+            this.children = children;
+            this.lines = lines;
+        }
+
+        /**
+         * Finds the child whose label starts with a character.
+         *
+         * @return The index of the child, or -(insertion point) - 1 if absent.
+         */
+        int findChild(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char m = children[mid].label.charAt(0);
+                if (m < c) {
+                    low = mid + 1;
+                } else if (m > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        RadixNode withLabel(String newLabel) {
+            return new RadixNode(newLabel, children, lines);
+        }
+
+        RadixNode withChild(int at, RadixNode child) {
+            RadixNode[] copy = children.clone();
+            copy[at] = child;
+            return new RadixNode(label, copy, lines);
+        }
+
+        RadixNode withNewChild(int at, RadixNode child) {
+            RadixNode[] grown = new RadixNode[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, at);
+            grown[at] = child;
+            System.arraycopy(children, at, grown, at + 1, children.length - at);
+            return new RadixNode(label, grown, lines);
+        }
+
+        /**
+         * Returns a copy of this node holding one more line, or this node if
+         * the line is already here.
+         */
+        RadixNode withLine(String line) {
+            int at = Arrays.binarySearch(lines, line);
+            if (at >= 0) {
+                return this; // Duplicate lines are not stored twice
+            }
+            at = -(at + 1);
+            String[] grown = new String[lines.length + 1];
+            System.arraycopy(lines, 0, grown, 0, at);
+            grown[at] = line;
+            System.arraycopy(lines, at, grown, at + 1, lines.length - at);
+            return new RadixNode(label, children, grown);
+        }
+    }
+
+    /**
+     * An immutable version of the tree, as it was when the snapshot was taken.
+     */
+    public static final class Snapshot {
+        private final RadixNode root;
+
+        private Snapshot(RadixNode root) {
+            this.root = root;
+        }
+
+        /**
+         * Streams, in sorted order, the lines whose term is exactly the given
+         * term.
+         *
+         * @param term   The term to look up.
+         * @param limit  The maximum number of lines to return.
+         * @param output Receives each matching line.
+         * @return The number of lines returned.
+         */
+        public int exact(String term, int limit, Consumer<String> output) {
+            Match match = descend(root, term);
+            if (match == null || match.offset != match.node.label.length()) {
+                return 0;
+            }
+            int count = Math.min(limit, match.node.lines.length);
+            for (int i = 0; i < count; i++) {
+                output.accept(match.node.lines[i]);
+            }
+            return count;
+        }
+
+        /**
+         * Streams, in sorted order, the lines whose term starts with a prefix.
+         *
+         * @param prefix The prefix to match.
+         * @param limit  The maximum number of lines to return.
+         * @param output Receives each matching line.
+         * @return The number of lines returned.
+         */
+        public int withPrefix(String prefix, int limit, Consumer<String> output) {
+            Match match = descend(root, prefix);
+            if (match == null) {
+                return 0;
+            }
+            return collectLines(match.node, limit, output);
+        }
+
+        /**
+         * Streams, in sorted order, the distinct terms that start with a
+         * prefix, for type-ahead suggestions.
+         *
+         * @param prefix The prefix typed so far.
+         * @param limit  The maximum number of terms to return.
+         * @param output Receives each matching term.
+         * @return The number of terms returned.
+         */
+        public int complete(String prefix, int limit, Consumer<String> output) {
+            Match match = descend(root, prefix);
+            if (match == null) {
+                return 0;
+            }
+            StringBuilder term = new StringBuilder(prefix);
+            term.append(match.node.label, match.offset, match.node.label.length());
+            return collectTerms(match.node, term, limit, output);
+        }
+
+        /**
+         * Returns the number of lines stored.
+         *
+         * @return The number of lines.
+         */
+        public int size() {
+            return countLines(root);
+        }
+    }
+
+    /**
+     * Returns the current version of the tree. The snapshot is unaffected by
+     * later inserts.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root.get());
+    }
+
+    /**
+     * Adds a line under its term and publishes the resulting version of the
+     * tree. If another writer publishes first, the insert is retried on its
+     * version.
+     *
+     * @param term The term of the line.
+     * @param line The whole line to store.
+     */
+    public void insert(String term, String line) {
+        while (true) {
+            RadixNode current = root.get();
+            RadixNode updated = insertRec(current, term, 0, line);
+            if (updated == current || root.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the path from a node to the node for a term, sharing
+     * every untouched subtree with the old version.
+     *
+     * @param node The node reached so far.
+     * @param term The term of the line.
+     * @param i    How much of the term the labels down to this node cover.
+     * @param line The line to store.
+     * @return The new node, or the same node if the line was already stored.
+     */
+    private static RadixNode insertRec(RadixNode node, String term, int i, String line) {
+        if (i == term.length()) {
+            return node.withLine(line);
+        }
+        int at = node.findChild(term.charAt(i));
+        if (at < 0) {
+            RadixNode leaf = new RadixNode(term.substring(i), new RadixNode[0], new String[] { line });
+            return node.withNewChild(-(at + 1), leaf);
+        }
+        RadixNode child = node.children[at];
+        int common = commonPrefix(child.label, term, i);
+        if (common < child.label.length()) {
+            // Split the edge so the shared part becomes its own node
+            RadixNode rest = child.withLabel(child.label.substring(common));
+            child = new RadixNode(child.label.substring(0, common), new RadixNode[] { rest }, new String[0]);
+        }
+        RadixNode updated = insertRec(child, term, i + common, line);
+        return updated == node.children[at] ? node : node.withChild(at, updated);
+    }
+
+    /**
+     * The point where a walk down the tree stopped: a node, and how far along
+     * the label leading to it the walk got.
+     */
+    private static class Match {
+        final RadixNode node;
+        final int offset;
+
+        Match(RadixNode node, int offset) {
+            this.node = node;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Follows a prefix down from a root.
+     *
+     * @param root   The root of the version to search.
+     * @param prefix The prefix to follow.
+     * @return Where the prefix ends, or null if no term starts with it.
+     */
+    private static Match descend(RadixNode root, String prefix) {
+        RadixNode node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int at = node.findChild(prefix.charAt(i));
+            if (at < 0) {
+                return null;
+            }
+            node = node.children[at];
+            int common = commonPrefix(node.label, prefix, i);
+            if (i + common == prefix.length()) {
+                return new Match(node, common);
+            }
+            if (common < node.label.length()) {
+                return null;
+            }
+            i += common;
+        }
+        return new Match(node, node.label.length());
+    }
+
+    private static int collectLines(RadixNode node, int limit, Consumer<String> output) {
+        int count = Math.min(limit, node.lines.length);
+        for (int i = 0; i < count; i++) {
+            output.accept(node.lines[i]);
+        }
+        for (RadixNode child : node.children) {
+            if (count >= limit) {
+                break;
+            }
+            count += collectLines(child, limit - count, output);
+        }
+        return count;
+    }
+
+    private static int collectTerms(RadixNode node, StringBuilder term, int limit, Consumer<String> output) {
+        int count = 0;
+        if (node.lines.length > 0 && limit > 0) {
+            output.accept(term.toString());
+            count++;
+        }
+        for (RadixNode child : node.children) {
+            if (count >= limit) {
+                break;
+            }
+            int length = term.length();
+            term.append(child.label);
+            count += collectTerms(child, term, limit - count, output);
+            term.setLength(length);
+        }
+        return count;
+    }
+
+    private static int countLines(RadixNode node) {
+        int count = node.lines.length;
+        for (RadixNode child : node.children) {
+            count += countLines(child);
+        }
+        return count;
+    }
+
+    /**
+     * Counts how many characters of a label match a key from a given offset.
+     */
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Represents an immutable node in a snapshot binary search tree. Nodes are
+ * never changed once published, so any number of threads can read them.
+ */
+final class SnapshotNode {
+    final String data;
+    final SnapshotNode left;
+    final SnapshotNode right;
+
+    /**
+     * Constructs a SnapshotNode with the given data and children.
+     *
+     * @param data  The data to be stored in the node.
+     * @param left  The left subtree.
+     * @param right The right subtree.
+     */
+    SnapshotNode(String data, SnapshotNode left, SnapshotNode right) {
+        this.data = data;
+        this.left = left;
+        this.right = right;
+    }
+}
+
+/**
+ * Represents a binary search tree that readers can query while another thread
+ * adds statements. An insert copies only the nodes on the path from the root
+ * to the new leaf and publishes the new root atomically, so every reader sees
+ * a complete, unchanging version of the tree without taking a lock.
+ */
+public class SnapshotBST {
+    private final AtomicReference<SnapshotNode> root = new AtomicReference<>();
+
+    /**
+     * An immutable version of the tree, as it was when the snapshot was taken.
+     */
+    public static final class Snapshot {
+        private final SnapshotNode root;
+
+        private Snapshot(SnapshotNode root) {
+            this.root = root;
+        }
+
+        /**
+         * Searches for an item by term and sentence.
+         *
+         * @param term     The term to be searched.
+         * @param sentence The sentence to be searched.
+         * @return true if the item is found, false otherwise.
+         */
+        public boolean searchByTermAndSentence(String term, String sentence) {
+            SnapshotNode node = root;
+            while (node != null) {
+                String[] parts = node.data.split("\t");
+                String termPart = parts[0]; // Extract the term part from the data
+                if (parts.length >= 3 && termPart.equals(term) && parts[1].equals(sentence)) {
+                    System.out.println("\nStatement found: " + parts[1] + " (Confidence score: " + parts[2] + ")\n");
+                    return true;
+                }
+                node = term.compareTo(termPart) < 0 ? node.left : node.right;
+            }
+            System.out.println("\nTerm and statement: '" + term + "' and '" + sentence + "' not found.\n");
+            return false;
+        }
+    }
+
+    /**
+     * Returns the current version of the tree. The snapshot is unaffected by
+     * later inserts.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(root.get());
+    }
+
+    /**
+     * Inserts new data and publishes the resulting version of the tree. If
+     * another writer publishes first, the insert is retried on its version.
+     *
+     * @param data The data to be inserted.
+     */
+    public void insert(String data) {
+        while (true) {
+            SnapshotNode current = root.get();
+            SnapshotNode updated = insertRec(current, data);
+            if (updated == current || root.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the path from the given node to the new leaf, sharing
+     * every untouched subtree with the old version.
+     */
+    private static SnapshotNode insertRec(SnapshotNode node, String data) {
+        if (node == null) {
+            return new SnapshotNode(data, null, null);
+        }
+        int cmp = data.compareTo(node.data);
+        if (cmp < 0) {
+            SnapshotNode left = insertRec(node.left, data);
+            return left == node.left ? node : new SnapshotNode(node.data, left, node.right);
+        } else if (cmp > 0) {
+            SnapshotNode right = insertRec(node.right, data);
+            return right == node.right ? node : new SnapshotNode(node.data, node.left, right);
+        }
+        return node; // Duplicate data not allowed
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Selects the entries with the highest confidence scores from a set of
+ * candidates, using a min-heap bounded to k entries so the candidates are
+ * never fully sorted.
+ */
+public class TopConfidence {
+
+    /**
+     * Returns the k candidates with the highest confidence scores.
+     *
+     * @param kb            The store holding the candidates.
+     * @param candidates    The entry indexes to choose from.
+     * @param k             The maximum number of entries to return.
+     * @param minConfidence Entries below this score, or without a score, are
+     *                      skipped.
+     * @return The chosen entry indexes, highest confidence first. Ties keep
+     *         the lower index first.
+     */
+    public static int[] select(KbColumns kb, int[] candidates, int k, float minConfidence) {
+        int[] heap = new int[Math.max(0, Math.min(k, candidates.length))];
+        int size = 0;
+        for (int id : candidates) {
+            float confidence = kb.confidence(id);
+            if (!(confidence >= minConfidence)) {
+                continue; // Also skips NaN scores
+            }
+            if (size < heap.length) {
+                heap[size] = id;
+                siftUp(kb, heap, size++);
+            } else if (size > 0 && ranksAbove(kb, id, heap[0])) {
+                heap[0] = id; // Replace the weakest of the current top k
+                siftDown(kb, heap, size);
+            }
+        }
+        // Repeatedly move the weakest entry to the end to get best-first order
+        for (int end = size - 1; end > 0; end--) {
+            int weakest = heap[0];
+            heap[0] = heap[end];
+            heap[end] = weakest;
+            siftDown(kb, heap, end);
+        }
+        int[] result = new int[size];
+        System.arraycopy(heap, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Checks whether one entry ranks above another: a higher score, or the same
+     * score and a lower index.
+     */
+    private static boolean ranksAbove(KbColumns kb, int a, int b) {
+        float ca = kb.confidence(a);
+        float cb = kb.confidence(b);
+        return ca > cb || (ca == cb && a < b);
+    }
+
+    private static void siftUp(KbColumns kb, int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!ranksAbove(kb, heap[parent], heap[i])) {
+                break;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(KbColumns kb, int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int weakest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && ranksAbove(kb, heap[weakest], heap[left])) {
+                weakest = left;
+            }
+            if (right < size && ranksAbove(kb, heap[weakest], heap[right])) {
+                weakest = right;
+            }
+            if (weakest == i) {
+                return;
+            }
+            swap(heap, i, weakest);
+            i = weakest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
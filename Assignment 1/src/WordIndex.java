@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An inverted index from each space-separated word of a term to the sorted
+ * list of entry indexes whose term contains that word.
+ */
+public class WordIndex {
+    private final HashMap<String, Postings> index = new HashMap<>();
+
+    /**
+     * A growable list of entry indexes in increasing order.
+     */
+    private static class Postings {
+        int[] ids = new int[2];
+        int size = 0;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return; // Word repeated within the same term
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Builds an index over every term in a columnar store.
+     *
+     * @param kb The store to index.
+     * @return The populated index.
+     */
+    public static WordIndex build(KbColumns kb) {
+        WordIndex wordIndex = new WordIndex();
+        for (int i = 0; i < kb.size(); i++) {
+            wordIndex.add(i, kb.term(i));
+        }
+        for (Postings postings : wordIndex.index.values()) {
+            postings.ids = Arrays.copyOf(postings.ids, postings.size);
+        }
+        return wordIndex;
+    }
+
+    /**
+     * Adds the words of a term to the index. Entry indexes must be added in
+     * increasing order.
+     *
+     * @param id   The index of the entry.
+     * @param term The term of the entry.
+     */
+    public void add(int id, String term) {
+        int start = 0;
+        while (start <= term.length()) {
+            int end = term.indexOf(' ', start);
+            if (end < 0) {
+                end = term.length();
+            }
+            if (end > start) {
+                index.computeIfAbsent(term.substring(start, end), word -> new Postings()).add(id);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Finds the entries whose terms contain every word of a query. Single-word
+     * queries give exact whole-word matches; multi-word queries give candidates
+     * that still need to be checked for the words appearing together.
+     *
+     * @param query The words to look up, separated by single spaces.
+     * @return The sorted entry indexes, or null if the query is empty or has
+     *         leading, trailing or repeated spaces and cannot use the index.
+     */
+    public int[] candidates(String query) {
+        if (query.isEmpty()) {
+            return null;
+        }
+        String[] words = query.split(" ", -1);
+        Postings[] lists = new Postings[words.length];
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].isEmpty()) {
+                return null;
+            }
+            lists[i] = index.get(words[i]);
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        // Intersect starting from the shortest list
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = result.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = intersect(result, count, lists[i]);
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Keeps only the ids in the first list that also appear in the postings.
+     *
+     * @param ids      The current ids, sorted; overwritten with the result.
+     * @param count    The number of valid ids.
+     * @param postings The postings to intersect with.
+     * @return The number of ids kept.
+     */
+    private static int intersect(int[] ids, int count, Postings postings) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < postings.size; i++) {
+            while (j < postings.size && postings.ids[j] < ids[i]) {
+                j++;
+            }
+            if (j < postings.size && postings.ids[j] == ids[i]) {
+                ids[kept++] = ids[i];
+            }
+        }
+        return kept;
+    }
+}
@@ -1,163 +1,269 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * @author Chris Scheepers
- *         Class for conducting experiments with AVL trees.
+ *         Class for conducting experiments with AVL trees. For each dataset
+ *         size, independent trials each insert a random subset of the
+ *         knowledge base into a new tree and then search it for every query.
+ *         The trials run in parallel, each with its own seeded random number
+ *         generator, so a run can be repeated exactly.
  */
 public class AVLExperiment {
     /** Array of dataset sizes for experiments. */
     public static final int[] datasetSizes = { 3, 10, 33, 100, 333, 1000, 3333, 10000, 33333, 50000 };
 
+    /** Sizes beyond the knowledge base, run when asked for on the command line. */
+    private static final int[] extendedSizes = { 100000, 333333, 1000000, 3333333, 10000000 };
+
+    /** Number of trials per dataset size. */
+    private static final int trials = 10;
+
+    /** Seed from which every trial's generator is derived. */
+    private static final long seed = 2001;
+
     /** Filename for query file. */
     private static final String queryFile = "GenericsKB-queries.txt";
 
+    /**
+     * The counts and latencies of one trial.
+     */
+    static class Trial {
+        long insertOps; // Comparisons summed over every insert
+        long searchOps; // Comparisons summed over every query
+        int found;
+        final LatencyHistogram insertLatency = new LatencyHistogram();
+        final LatencyHistogram searchLatency = new LatencyHistogram();
+        AVLMetrics.Snapshot metrics; // The tree's own counters after the queries
+    }
+
+    /**
+     * The results of every trial at one dataset size.
+     */
+    static class SizeResult {
+        final int size;
+        long minInsert = Long.MAX_VALUE;
+        long maxInsert = 0;
+        long sumInsert = 0;
+        long minSearch = Long.MAX_VALUE;
+        long maxSearch = 0;
+        long sumSearch = 0;
+        final LatencyHistogram insertLatency = new LatencyHistogram();
+        final LatencyHistogram searchLatency = new LatencyHistogram();
+        AVLMetrics.Snapshot metrics; // Of the first trial, as a sample of tree health
+
+        SizeResult(int size) {
+            this.size = size;
+        }
+
+        void add(Trial trial) {
+            minInsert = Math.min(minInsert, trial.insertOps);
+            maxInsert = Math.max(maxInsert, trial.insertOps);
+            sumInsert += trial.insertOps;
+            minSearch = Math.min(minSearch, trial.searchOps);
+            maxSearch = Math.max(maxSearch, trial.searchOps);
+            sumSearch += trial.searchOps;
+            insertLatency.merge(trial.insertLatency);
+            searchLatency.merge(trial.searchLatency);
+            if (metrics == null) {
+                metrics = trial.metrics;
+            }
+        }
+    }
+
     /**
      * Main method to run the AVL tree experiment.
-     * 
-     * @param args The command line arguments.
+     *
+     * @param args Optionally the largest dataset size to run, up to 10000000
+     *             (default 50000), and the number of trials to run at once
+     *             (default one per processor).
      */
     public static void main(String[] args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        String[] dataset;
+        String[] queries;
         try {
-            FileWriter writer = new FileWriter("experiment_results.txt");
+            dataset = readDatasetFromFile("GenericsKB.txt");
+            KbFile file = KbFile.open(queryFile);
+            queries = new String[file.size()];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = file.line(i).trim();
+            }
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+            return;
+        }
 
-            // Write column headers
-            writer.write("Dataset Size\tInsert Min\tInsert Max\tInsert Avg\tSearch Min\tSearch Max\tSearch Avg\n");
-
-            // Read dataset from file
-            List<String> dataset = readDatasetFromFile("GenericsKB.txt");
-
-            // Iterate over dataset sizes
-            for (int size : datasetSizes) {
-                List<Integer> insertOpCounts = new ArrayList<>();
-                List<Integer> searchOpCounts = new ArrayList<>();
-
-                // Perform experiment for current dataset size
-                for (int i = 0; i < 10; i++) {
-                    AVLTree avl = new AVLTree();
-                    List<String> subset = generateRandomSubset(size, dataset);
-                    int insertOpCount = 0;
-                    // Load data into AVL tree
-                    for (String item : subset) {
-                        avl.insert(item);
-                        insertOpCount = avl.getInsertOpCount();
-                        avl.resetInsertOpCount();
-                    }
-
-                    // Perform searches and record operation counts
-
-                    int searchOpCount = 0;
-                    try {
-                        Scanner scanner = new Scanner(new File(queryFile));
-                        while (scanner.hasNextLine()) {
-                            String query = scanner.nextLine().trim();
-                            boolean found = avl.search(query);
-                            if (found) {
-                                searchOpCount = avl.getSearchOpCount(); // Add current search count
-                            }
-                            // Reset search operation count for the next iteration
-                            avl.resetSearchOpCount();
-                        }
-                        scanner.close();
-                    } catch (FileNotFoundException e) {
-                        e.printStackTrace();
-                    }
-                    insertOpCounts.add(insertOpCount);
-                    searchOpCounts.add(searchOpCount);
-                }
+        List<Integer> sizes = new ArrayList<>();
+        for (int size : datasetSizes) {
+            sizes.add(size);
+        }
+        for (int size : extendedSizes) {
+            if (size <= maxSize) {
+                sizes.add(size);
+            }
+        }
+        String[] lines = extend(dataset, Math.max(maxSize, dataset.length));
 
-                // Calculate min, max, and average of operation counts
-                int minInsertOpCount = insertOpCounts.stream().min(Integer::compareTo).orElse(0);
-                int maxInsertOpCount = insertOpCounts.stream().max(Integer::compareTo).orElse(0);
-                int avgInsertOpCount = (int) insertOpCounts.stream().mapToInt(Integer::intValue).average().orElse(0);
-                int minSearchOpCount = searchOpCounts.stream().min(Integer::compareTo).orElse(0);
-                int maxSearchOpCount = searchOpCounts.stream().max(Integer::compareTo).orElse(0);
-                int avgSearchOpCount = (int) searchOpCounts.stream().mapToInt(Integer::intValue).average().orElse(0);
-
-                // Write experiment results to file
-                writer.write(String.format("%d\t\t%d\t\t%d\t\t%d\t\t%d\t\t%d\t\t%d\n", size, minInsertOpCount,
-                        maxInsertOpCount, avgInsertOpCount, minSearchOpCount, maxSearchOpCount, avgSearchOpCount));
-                toExcel(size, minInsertOpCount, maxInsertOpCount, avgInsertOpCount, minSearchOpCount, maxSearchOpCount,
-                        avgSearchOpCount);
+        List<SizeResult> results = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            for (int size : sizes) {
+                // Sizes within the knowledge base sample it, larger ones the numbered copies too
+                int population = Math.max(size, dataset.length);
+                List<Callable<Trial>> tasks = new ArrayList<>();
+                for (int t = 0; t < trials; t++) {
+                    long trialSeed = seed * 1_000_003L + (long) size * trials + t;
+                    tasks.add(() -> runTrial(lines, population, size, queries, new SplittableRandom(trialSeed)));
+                }
+                long start = System.nanoTime();
+                SizeResult result = new SizeResult(size);
+                for (Future<Trial> trial : pool.invokeAll(tasks)) {
+                    result.add(trial.get());
+                }
+                results.add(result);
+                System.out.printf("Size %d: %d trials in %.1f ms%n", size, trials, (System.nanoTime() - start) / 1e6);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("\nExperiment interrupted.\n");
+            return;
+        } catch (ExecutionException e) {
+            System.out.println("\nTrial failed: " + e.getCause() + "\n");
+            return;
+        } finally {
+            pool.shutdown();
+        }
 
-            writer.close();
-            System.out.println("Experiment completed. Results written to experiment_results.txt.");
+        try {
+            writeResults(results);
+            System.out.println("Experiment completed. Results written to experiment_results.txt,"
+                    + " output.csv and experiment_metrics.txt.");
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println("\nError writing results: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Runs one trial: inserts a random subset of the lines into a new tree,
+     * then searches for every query, timing each operation.
+     *
+     * @param lines      The lines to sample from.
+     * @param population The number of leading lines to sample from.
+     * @param size       The number of lines to sample, with replacement.
+     * @param queries    The terms to search for.
+     * @param random     The trial's random number generator.
+     * @return The trial's counts and latencies.
+     */
+    static Trial runTrial(String[] lines, int population, int size, String[] queries, SplittableRandom random) {
+        Trial trial = new Trial();
+        AVLTree avl = new AVLTree();
+        for (int i = 0; i < size; i++) {
+            String item = lines[random.nextInt(population)];
+            long start = System.nanoTime();
+            avl.insert(item);
+            trial.insertLatency.record(System.nanoTime() - start);
         }
+        trial.insertOps = avl.getInsertOpCount();
 
+        for (String query : queries) {
+            long start = System.nanoTime();
+            boolean found = avl.find(query) != null;
+            trial.searchLatency.record(System.nanoTime() - start);
+            if (found) {
+                trial.found++;
+            }
+        }
+        trial.searchOps = avl.getSearchOpCount();
+        trial.metrics = avl.snapshotMetrics();
+        return trial;
     }
 
     /**
      * Reads dataset from a file.
-     * 
+     *
      * @param fileName The name of the file containing the dataset.
-     * @return The list of strings representing the dataset.
+     * @return Every line of the file.
+     * @throws IOException If the file cannot be read.
      */
-    private static List<String> readDatasetFromFile(String fileName) {
-        List<String> dataset = new ArrayList<>();
-        try {
-            Scanner scanner = new Scanner(new File(fileName));
-            while (scanner.hasNextLine()) {
-                dataset.add(scanner.nextLine());
-            }
-            scanner.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    private static String[] readDatasetFromFile(String fileName) throws IOException {
+        KbFile file = KbFile.open(fileName);
+        String[] dataset = new String[file.size()];
+        for (int i = 0; i < dataset.length; i++) {
+            dataset[i] = file.line(i);
         }
         return dataset;
     }
 
     /**
-     * Generates a random subset of a dataset.
-     * 
-     * @param size    The size of the subset.
-     * @param dataset The dataset from which to generate the subset.
-     * @return The randomly generated subset.
+     * Extends a dataset to a given size with copies of its lines whose terms
+     * are numbered, so that every line stays distinct.
+     *
+     * @param dataset The lines to copy.
+     * @param size    The number of lines wanted.
+     * @return The dataset followed by as many numbered copies as needed.
      */
-    private static List<String> generateRandomSubset(int size, List<String> dataset) {
-        List<String> subset = new ArrayList<>();
-        Random random = new Random();
-        for (int i = 0; i < size; i++) {
-            int index = random.nextInt(dataset.size());
-            subset.add(dataset.get(index));
+    static String[] extend(String[] dataset, int size) {
+        String[] lines = new String[Math.max(size, dataset.length)];
+        for (int i = 0; i < lines.length; i++) {
+            String line = dataset[i % dataset.length];
+            int copy = i / dataset.length;
+            if (copy > 0) {
+                int tab = line.indexOf('\t');
+                line = tab >= 0 ? line.substring(0, tab) + " " + copy + line.substring(tab) : line + " " + copy;
+            }
+            lines[i] = line;
         }
-        return subset;
+        return lines;
     }
 
     /**
-     * Writes experiment results to a CSV file.
-     * 
-     * @param size             The dataset size.
-     * @param minInsertOpCount The minimum insertion operation count.
-     * @param maxInsertOpCount The maximum insertion operation count.
-     * @param avgInsertOpCount The average insertion operation count.
-     * @param minSearchOpCount The minimum search operation count.
-     * @param maxSearchOpCount The maximum search operation count.
-     * @param avgSearchOpCount The average search operation count.
+     * Writes the results for every dataset size to experiment_results.txt and
+     * output.csv, each in one buffered pass, and the tree metrics of each
+     * size's first trial to experiment_metrics.txt.
+     *
+     * @param results The results, in order of dataset size.
+     * @throws IOException If a file cannot be written.
      */
-    public static void toExcel(int size, int minInsertOpCount, int maxInsertOpCount, int avgInsertOpCount,
-            int minSearchOpCount, int maxSearchOpCount, int avgSearchOpCount) {
-        String csvFile = "output.csv";
-        try (FileWriter writer = new FileWriter(csvFile, true)) { // Set append flag to true
-            if (new
-
-            File(csvFile).length() == 0) { // Check if file is empty
-                writer.append("Dataset Size,Insert Min,Insert Max,Insert Avg,Search Min,Search Max,Search Avg\n");
+    private static void writeResults(List<SizeResult> results) throws IOException {
+        try (BufferedWriter text = Files.newBufferedWriter(Path.of("experiment_results.txt"), StandardCharsets.UTF_8);
+                BufferedWriter csv = Files.newBufferedWriter(Path.of("output.csv"), StandardCharsets.UTF_8)) {
+            // Write column headers
+            text.write("Dataset Size\tInsert Min\tInsert Max\tInsert Avg\tSearch Min\tSearch Max\tSearch Avg"
+                    + "\tInsert p50 ns\tInsert p99 ns\tSearch p50 ns\tSearch p90 ns\tSearch p99 ns\tSearch Max ns\n");
+            csv.write("Dataset Size,Insert Min,Insert Max,Insert Avg,Search Min,Search Max,Search Avg,"
+                    + "Insert p50 ns,Insert p99 ns,Search p50 ns,Search p90 ns,Search p99 ns,Search Max ns\n");
+            for (SizeResult r : results) {
+                long[] row = { r.size, r.minInsert, r.maxInsert, r.sumInsert / trials, r.minSearch, r.maxSearch,
+                        r.sumSearch / trials, r.insertLatency.percentile(0.5), r.insertLatency.percentile(0.99),
+                        r.searchLatency.percentile(0.5), r.searchLatency.percentile(0.9),
+                        r.searchLatency.percentile(0.99), r.searchLatency.getMax() };
+                for (int i = 0; i < row.length; i++) {
+                    text.write((i == 0 ? "" : "\t\t") + row[i]);
+                    csv.write((i == 0 ? "" : ",") + row[i]);
+                }
+                text.write("\n");
+                csv.write("\n");
+            }
+        }
+        try (BufferedWriter metrics = Files.newBufferedWriter(Path.of("experiment_metrics.txt"),
+                StandardCharsets.UTF_8)) {
+            for (SizeResult r : results) {
+                metrics.write("# Dataset Size " + r.size + ", trial 1\n");
+                metrics.write(r.metrics + "\n");
             }
-            writer.append(size + "," + minInsertOpCount + "," + maxInsertOpCount + "," + avgInsertOpCount + ","
-                    + minSearchOpCount + "," + maxSearchOpCount + "," + avgSearchOpCount + "\n");
-
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        System.out.println("CSV file updated successfully.");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in a TermAVLTree, so every term is found with a
+ *         descent of logarithmic depth. Absent terms are rejected by the
+ *         tree's Bloom filter before the descent.
+ */
+public class AVLKnowledgeBase implements KnowledgeBase {
+    private TermAVLTree tree = new TermAVLTree();
+
+    @Override
+    public String name() {
+        return "avl";
+    }
+
+    /**
+     * Adds every well-formed line of a file. An empty tree is built from the
+     * sorted lines in one pass instead of by repeated insertion, then
+     * repeated statements are merged as add would have merged them.
+     *
+     * @param file The indexed file to load.
+     */
+    @Override
+    public void load(KbFile file) {
+        if (tree.size() == 0) {
+            tree = TermAVLTree.build(file, true);
+            for (TermAVLNode node : tree.nodesInOrder()) {
+                node.dropRepeats();
+            }
+        } else {
+            KnowledgeBase.super.load(file);
+        }
+        tree.enableBloomFilter(0.01);
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        TermAVLNode node = tree.get(term);
+        int index = node != null ? node.indexOf(statement) : -1;
+        if (index >= 0) {
+            node.setConfidence(index, valueOf(confidence), confidence);
+        } else {
+            tree.insert(term, statement, valueOf(confidence), confidence);
+        }
+    }
+
+    private static float valueOf(String confidence) {
+        try {
+            return Float.parseFloat(confidence);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        TermAVLNode node = tree.find(term);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> found = new ArrayList<>(node.statementCount());
+        for (int i = 0; i < node.statementCount(); i++) {
+            found.add(node.getStatement(i));
+        }
+        return found;
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        TermAVLNode node = tree.find(term);
+        int index = node != null ? node.indexOf(statement) : -1;
+        return index >= 0 ? node.getConfidenceText(index) : null;
+    }
+}
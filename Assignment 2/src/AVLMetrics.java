@@ -0,0 +1,342 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Chris Scheepers
+ *         Always-on counters for an AVLTree. Every counter is a striped
+ *         LongAdder, so threads searching at the same time do not contend on
+ *         a shared field. Comparisons are counted per search and per insert
+ *         into histograms, rotations are counted by case, and the latency of
+ *         one search in {@value #LATENCY_SAMPLE} is recorded. snapshot
+ *         reads the counters one after another rather than all at once, so
+ *         while operations are running the copy can include an operation in
+ *         one counter and miss it in another; the figures agree exactly only
+ *         once the tree is idle.
+ */
+public class AVLMetrics {
+    /** One search in this many is timed, to keep the clock off the fast path. */
+    static final int LATENCY_SAMPLE = 8;
+
+    private final LongAdder[] searchComparisons;
+    private final LongAdder[] insertComparisons;
+    private final LongAdder searchHits = new LongAdder();
+    private final LongAdder searchMisses = new LongAdder();
+    private final LongAdder duplicateInserts = new LongAdder();
+    private final LongAdder leftLeft = new LongAdder();
+    private final LongAdder leftRight = new LongAdder();
+    private final LongAdder rightRight = new LongAdder();
+    private final LongAdder rightLeft = new LongAdder();
+    private final LongAdder[] latencyBuckets = new LongAdder[LatencyHistogram.BUCKETS];
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAccumulator latencyMax = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs zeroed counters.
+     *
+     * @param maxComparisons The most comparisons one operation can make; larger
+     *                       counts share the last histogram bucket.
+     */
+    AVLMetrics(int maxComparisons) {
+        searchComparisons = adders(maxComparisons + 1);
+        insertComparisons = adders(maxComparisons + 1);
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Decides whether the calling search should be timed.
+     *
+     * @return true for about one call in {@value #LATENCY_SAMPLE}.
+     */
+    boolean sampleLatency() {
+        return ThreadLocalRandom.current().nextInt(LATENCY_SAMPLE) == 0;
+    }
+
+    /**
+     * Records a finished search.
+     *
+     * @param comparisons The number of keys compared.
+     * @param found       Whether the term was found.
+     */
+    void recordSearch(int comparisons, boolean found) {
+        searchComparisons[Math.min(comparisons, searchComparisons.length - 1)].increment();
+        (found ? searchHits : searchMisses).increment();
+    }
+
+    /**
+     * Records the latency of a sampled search.
+     *
+     * @param nanos The time the search took.
+     */
+    void recordSearchLatency(long nanos) {
+        long value = Math.max(0, nanos);
+        latencyBuckets[LatencyHistogram.bucketOf(value)].increment();
+        latencySum.add(value);
+        latencyMax.accumulate(value);
+    }
+
+    /**
+     * Records a finished insert.
+     *
+     * @param comparisons The number of keys compared.
+     * @param duplicate   Whether the data was already in the tree.
+     */
+    void recordInsert(int comparisons, boolean duplicate) {
+        insertComparisons[Math.min(comparisons, insertComparisons.length - 1)].increment();
+        if (duplicate) {
+            duplicateInserts.increment();
+        }
+    }
+
+    void recordLeftLeft() {
+        leftLeft.increment();
+    }
+
+    void recordLeftRight() {
+        leftRight.increment();
+    }
+
+    void recordRightRight() {
+        rightRight.increment();
+    }
+
+    void recordRightLeft() {
+        rightLeft.increment();
+    }
+
+    /**
+     * Sets every counter back to zero. Operations running at the same time
+     * may be partly counted.
+     */
+    public void reset() {
+        for (LongAdder adder : searchComparisons) {
+            adder.reset();
+        }
+        for (LongAdder adder : insertComparisons) {
+            adder.reset();
+        }
+        for (LongAdder adder : latencyBuckets) {
+            adder.reset();
+        }
+        searchHits.reset();
+        searchMisses.reset();
+        duplicateInserts.reset();
+        leftLeft.reset();
+        leftRight.reset();
+        rightRight.reset();
+        rightLeft.reset();
+        latencySum.reset();
+        latencyMax.reset();
+    }
+
+    /**
+     * Copies the counters, together with the tree's current shape. Each
+     * counter is read separately, so operations running at the same time may
+     * be counted in some of the copied figures and not in others.
+     *
+     * @param height    The height of the tree.
+     * @param nodeCount The number of nodes in the tree.
+     * @return The copy.
+     */
+    Snapshot snapshot(int height, int nodeCount) {
+        long[] buckets = new long[latencyBuckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = latencyBuckets[i].sum();
+        }
+        return new Snapshot(this, height, nodeCount,
+                new LatencyHistogram(buckets, latencySum.sum(), latencyMax.get()));
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    /**
+     * An unchanging copy of a tree's metrics. It is exact when the tree was
+     * idle while it was taken, and otherwise close to one moment.
+     */
+    public static class Snapshot {
+        private final int height;
+        private final int nodeCount;
+        private final long[] searchComparisons;
+        private final long[] insertComparisons;
+        private final long searchHits;
+        private final long searchMisses;
+        private final long duplicateInserts;
+        private final long leftLeft;
+        private final long leftRight;
+        private final long rightRight;
+        private final long rightLeft;
+        private final LatencyHistogram searchLatency;
+
+        private Snapshot(AVLMetrics metrics, int height, int nodeCount, LatencyHistogram searchLatency) {
+            this.height = height;
+            this.nodeCount = nodeCount;
+            searchComparisons = sums(metrics.searchComparisons);
+            insertComparisons = sums(metrics.insertComparisons);
+            searchHits = metrics.searchHits.sum();
+            searchMisses = metrics.searchMisses.sum();
+            duplicateInserts = metrics.duplicateInserts.sum();
+            leftLeft = metrics.leftLeft.sum();
+            leftRight = metrics.leftRight.sum();
+            rightRight = metrics.rightRight.sum();
+            rightLeft = metrics.rightLeft.sum();
+            this.searchLatency = searchLatency;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public long getSearches() {
+            return searchHits + searchMisses;
+        }
+
+        public long getSearchHits() {
+            return searchHits;
+        }
+
+        public long getSearchMisses() {
+            return searchMisses;
+        }
+
+        public long getInserts() {
+            long inserts = 0;
+            for (long count : insertComparisons) {
+                inserts += count;
+            }
+            return inserts;
+        }
+
+        public long getDuplicateInserts() {
+            return duplicateInserts;
+        }
+
+        public long getLeftLeftRotations() {
+            return leftLeft;
+        }
+
+        public long getLeftRightRotations() {
+            return leftRight;
+        }
+
+        public long getRightRightRotations() {
+            return rightRight;
+        }
+
+        public long getRightLeftRotations() {
+            return rightLeft;
+        }
+
+        /**
+         * Returns how many searches made each number of comparisons.
+         *
+         * @return Counts indexed by number of comparisons; the last entry also
+         *         counts anything larger.
+         */
+        public long[] getSearchComparisonHistogram() {
+            return searchComparisons.clone();
+        }
+
+        /**
+         * Returns how many inserts made each number of comparisons.
+         *
+         * @return Counts indexed by number of comparisons; the last entry also
+         *         counts anything larger.
+         */
+        public long[] getInsertComparisonHistogram() {
+            return insertComparisons.clone();
+        }
+
+        /**
+         * Returns the latency of the sampled searches.
+         *
+         * @return The latency histogram.
+         */
+        public LatencyHistogram getSearchLatency() {
+            return searchLatency;
+        }
+
+        /**
+         * Flattens the snapshot into named values, in a fixed order, for
+         * logging or for a monitoring system.
+         *
+         * @return The values by name.
+         */
+        public Map<String, Long> toMap() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("avl.height", (long) height);
+            values.put("avl.nodes", (long) nodeCount);
+            values.put("avl.search.count", getSearches());
+            values.put("avl.search.hits", searchHits);
+            values.put("avl.search.misses", searchMisses);
+            values.put("avl.search.comparisons.mean", Math.round(mean(searchComparisons)));
+            values.put("avl.search.comparisons.max", (long) maxIndex(searchComparisons));
+            values.put("avl.search.latency.samples", searchLatency.getCount());
+            values.put("avl.search.latency.p50_ns", searchLatency.percentile(0.5));
+            values.put("avl.search.latency.p90_ns", searchLatency.percentile(0.9));
+            values.put("avl.search.latency.p99_ns", searchLatency.percentile(0.99));
+            values.put("avl.search.latency.max_ns", searchLatency.getMax());
+            values.put("avl.insert.count", getInserts());
+            values.put("avl.insert.duplicates", duplicateInserts);
+            values.put("avl.insert.comparisons.mean", Math.round(mean(insertComparisons)));
+            values.put("avl.insert.comparisons.max", (long) maxIndex(insertComparisons));
+            values.put("avl.rotations.ll", leftLeft);
+            values.put("avl.rotations.lr", leftRight);
+            values.put("avl.rotations.rr", rightRight);
+            values.put("avl.rotations.rl", rightLeft);
+            return values;
+        }
+
+        private static double mean(long[] histogram) {
+            long count = 0;
+            long sum = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                count += histogram[i];
+                sum += i * histogram[i];
+            }
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        private static int maxIndex(long[] histogram) {
+            for (int i = histogram.length - 1; i > 0; i--) {
+                if (histogram[i] > 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Formats the snapshot as one {@code name=value} pair per line.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, Long> value : toMap().entrySet()) {
+                text.append(value.getKey()).append('=').append(value.getValue()).append('\n');
+            }
+            return text.toString();
+        }
+    }
+}
@@ -1,9 +1,15 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * @author Chris Scheepers
  * Represents a node in an AVL tree.
  */
 class AVLNode {
     String data;
+    final String key; // Term part of the data, extracted once at insert time
     AVLNode left;
     AVLNode right;
     int height;
@@ -15,18 +21,30 @@ class AVLNode {
      */
     public AVLNode(String data) {
         this.data = data;
+        int tab = data.indexOf('\t');
+        key = tab >= 0 ? data.substring(0, tab) : data;
         left = right = null;
         height = 1;
     }
 }
 
 /**
- * Represents an AVL tree.
+ * Represents an AVL tree. Every search and insert is counted in the tree's
+ * AVLMetrics, which can be read with snapshotMetrics while the tree is in use.
  */
-public class AVLTree {
+public class AVLTree implements Iterable<String> {
+    /** Deeper than any AVL tree that fits in memory (height is below 1.45 log2 n). */
+    private static final int MAX_HEIGHT = 64;
+
     AVLNode root;
-    private int searchOpCount = 0;
-    private int insertOpCount = 0;
+    private int size = 0;
+    // Striped, so searches running at the same time do not lose counts
+    private final LongAdder searchOpCount = new LongAdder();
+    private final LongAdder insertOpCount = new LongAdder();
+    private final AVLMetrics metrics = new AVLMetrics(MAX_HEIGHT);
+    // Reused by insert to record the path from the root, so no recursion is needed
+    private final AVLNode[] path = new AVLNode[MAX_HEIGHT];
+    private final boolean[] wentLeft = new boolean[MAX_HEIGHT];
 
     /**
      * Constructs an empty AVL tree.
@@ -35,13 +53,59 @@ public class AVLTree {
         root = null;
     }
 
+    /**
+     * Builds a perfectly balanced AVL tree from unsorted data in one pass. The
+     * data is sorted in parallel, duplicates are dropped, and the tree is
+     * assembled from the middle element outwards with correct heights, so
+     * later calls to insert keep working as normal.
+     *
+     * @param data The data to be stored in the tree. It is not modified.
+     * @return The new tree.
+     */
+    public static AVLTree build(String[] data) {
+        String[] sorted = data.clone();
+        Arrays.parallelSort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        AVLTree tree = new AVLTree();
+        tree.root = buildRange(sorted, 0, unique - 1);
+        tree.size = unique;
+        return tree;
+    }
+
+    /**
+     * Builds a balanced subtree from a sorted range of data.
+     *
+     * @param sorted The sorted, duplicate-free data.
+     * @param low    The first index of the range.
+     * @param high   The last index of the range.
+     * @return The root of the subtree, or null if the range is empty.
+     */
+    private static AVLNode buildRange(String[] sorted, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        int mid = (low + high) >>> 1;
+        AVLNode node = new AVLNode(sorted[mid]);
+        node.left = buildRange(sorted, low, mid - 1);
+        node.right = buildRange(sorted, mid + 1, high);
+        int leftHeight = node.left == null ? 0 : node.left.height;
+        int rightHeight = node.right == null ? 0 : node.right.height;
+        node.height = 1 + Math.max(leftHeight, rightHeight);
+        return node;
+    }
+
     /**
      * Inserts a new data into the AVL tree.
      *
      * @param data The data to be inserted.
      */
     public void insert(String data) {
-        root = insertRec(root, data);
+        root = insertIter(data);
         if (!isBalanced(root)) {
             root = balance(root);
             // Perform balancing operation if the tree is not balanced after insertion
@@ -66,11 +130,13 @@ public class AVLTree {
         if (balanceFactor > 1) {
             // Left-Left case: Perform right rotation on the current node
             if (height(node.left.left) >= height(node.left.right)) {
+                metrics.recordLeftLeft();
                 return rightRotate(node);
             }
             // Left-Right case: Perform left rotation on the left child followed by right
             // rotation on the current node
             else {
+                metrics.recordLeftRight();
                 node.left = leftRotate(node.left);
                 return rightRotate(node);
             }
@@ -79,11 +145,13 @@ public class AVLTree {
         else if (balanceFactor < -1) {
             // Right-Right case: Perform left rotation on the current node
             if (height(node.right.right) >= height(node.right.left)) {
+                metrics.recordRightRight();
                 return leftRotate(node);
             }
             // Right-Left case: Perform right rotation on the right child followed by left
             // rotation on the current node
             else {
+                metrics.recordRightLeft();
                 node.right = rightRotate(node.right);
                 return leftRotate(node);
             }
@@ -91,23 +159,55 @@ public class AVLTree {
         return node; // Node is already balanced
     }
 
-    private AVLNode insertRec(AVLNode node, String data) {
-        if (node == null) {
-            insertOpCount++; // Increment insert operation count
-            return new AVLNode(data);
+    /**
+     * Inserts data by walking down to a leaf and then rebalancing each node on
+     * the recorded path back up to the root.
+     *
+     * @param data The data to be inserted.
+     * @return The new root of the tree.
+     */
+    private AVLNode insertIter(String data) {
+        int depth = 0;
+        AVLNode node = root;
+        while (node != null) {
+            int cmp = data.compareTo(node.data);
+            if (cmp == 0) {
+                insertOpCount.add(depth);
+                metrics.recordInsert(depth + 1, true);
+                return root; // Duplicate data not allowed
+            }
+            path[depth] = node;
+            wentLeft[depth] = cmp < 0;
+            depth++;
+            node = cmp < 0 ? node.left : node.right;
         }
-
-        if (data.compareTo(node.data) < 0) {
-            insertOpCount++;
-            node.left = insertRec(node.left, data);
-        } else if (data.compareTo(node.data) > 0) {
-            insertOpCount++;
-            node.right = insertRec(node.right, data);
-        } else {
-            // Duplicate data not allowed
-            return node;
+        insertOpCount.add(depth + 1); // One per node passed, plus the new leaf
+        metrics.recordInsert(depth, false);
+        size++;
+        AVLNode child = new AVLNode(data);
+
+        for (int i = depth - 1; i >= 0; i--) {
+            node = path[i];
+            if (wentLeft[i]) {
+                node.left = child;
+            } else {
+                node.right = child;
+            }
+            child = rebalance(node, data);
+            path[i] = null; // Do not keep nodes reachable from the reused path
         }
+        return child;
+    }
 
+    /**
+     * Updates the height of a node on an insertion path and rotates it if the
+     * insertion left it unbalanced.
+     *
+     * @param node The node to rebalance.
+     * @param data The data that was inserted below the node.
+     * @return The root of the rebalanced subtree.
+     */
+    private AVLNode rebalance(AVLNode node, String data) {
         // Update height of this ancestor node
         node.height = 1 + Math.max(height(node.left), height(node.right));
 
@@ -119,22 +219,26 @@ public class AVLTree {
 
         // Left Left Case
         if (balance > 1 && data.compareTo(node.left.data) < 0) {
+            metrics.recordLeftLeft();
             return rightRotate(node);
         }
 
         // Right Right Case
         if (balance < -1 && data.compareTo(node.right.data) > 0) {
+            metrics.recordRightRight();
             return leftRotate(node);
         }
 
         // Left Right Case
         if (balance > 1 && data.compareTo(node.left.data) > 0) {
+            metrics.recordLeftRight();
             node.left = leftRotate(node.left);
             return rightRotate(node);
         }
 
         // Right Left Case
         if (balance < -1 && data.compareTo(node.right.data) < 0) {
+            metrics.recordRightLeft();
             node.right = rightRotate(node.right);
             return leftRotate(node);
         }
@@ -143,33 +247,137 @@ public class AVLTree {
     }
 
     /**
-     * Searches for a term in the AVL tree.
+     * Searches for a term in the AVL tree and prints the matching statement.
      *
      * @param term The term to be searched.
      * @return true if the term is found, false otherwise.
      */
     public boolean search(String term) {
-        return searchRec(root, term);
-    }
-
-    private boolean searchRec(AVLNode node, String term) {
+        AVLNode node = find(term);
         if (node == null) {
             return false;
         }
+        System.out.println(node.key + ": " + statementOf(node));
+        return true;
+    }
+
+    /**
+     * Finds the node whose term matches, without printing or allocating.
+     *
+     * @param term The term to be searched.
+     * @return The matching node, or null if the term is not in the tree.
+     */
+    AVLNode find(String term) {
+        boolean timed = metrics.sampleLatency();
+        long start = timed ? System.nanoTime() : 0;
+        int comparisons = 0;
+        AVLNode node = root;
+        while (node != null) {
+            comparisons++; // Count each comparison on the way down
+            int comparisonResult = term.compareTo(node.key);
+            if (comparisonResult == 0) {
+                break;
+            }
+            node = comparisonResult < 0 ? node.left : node.right;
+        }
+        if (timed) {
+            metrics.recordSearchLatency(System.nanoTime() - start);
+        }
+        searchOpCount.add(comparisons);
+        metrics.recordSearch(comparisons, node != null);
+        return node;
+    }
+
+    /**
+     * Extracts the statement part of a node's data.
+     *
+     * @param node The node to read.
+     * @return The text between the first and second tabs, or an empty string.
+     */
+    private static String statementOf(AVLNode node) {
+        int start = node.key.length() + 1;
+        if (start > node.data.length()) {
+            return "";
+        }
+        int end = node.data.indexOf('\t', start);
+        return node.data.substring(start, end >= 0 ? end : node.data.length());
+    }
+
+    /**
+     * Returns a lazy in-order iterator over the data in the tree. The tree must
+     * not be modified while the iterator is in use.
+     *
+     * @return An iterator over every item, in sorted order.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new InOrderIterator(null, true, null, true);
+    }
+
+    /**
+     * Returns a view of the items whose terms fall between two bounds, in
+     * sorted order. Iteration descends straight to the lower bound, so a page
+     * costs O(log n + page size) rather than a scan from the smallest term.
+     *
+     * @param fromTerm      The lower bound, or null for no lower bound.
+     * @param fromInclusive Whether items with the lower bound term are included.
+     * @param toTerm        The upper bound, or null for no upper bound.
+     * @param toInclusive   Whether items with the upper bound term are included.
+     * @return A lazily evaluated view of the range.
+     */
+    public Iterable<String> range(String fromTerm, boolean fromInclusive, String toTerm, boolean toInclusive) {
+        return () -> new InOrderIterator(fromTerm, fromInclusive, toTerm, toInclusive);
+    }
+
+    /**
+     * An in-order walk that keeps the pending ancestors on an explicit stack
+     * instead of recursing.
+     */
+    private class InOrderIterator implements Iterator<String> {
+        private final AVLNode[] stack = new AVLNode[height(root)];
+        private int top = 0;
+        private final String toTerm;
+        private final boolean toInclusive;
+
+        InOrderIterator(String fromTerm, boolean fromInclusive, String toTerm, boolean toInclusive) {
+            this.toTerm = toTerm;
+            this.toInclusive = toInclusive;
+            // Push every node on the path to the lower bound that is inside the range
+            AVLNode node = root;
+            while (node != null) {
+                int cmp = fromTerm == null ? 1 : node.key.compareTo(fromTerm);
+                if (cmp > 0 || (cmp == 0 && fromInclusive)) {
+                    stack[top++] = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
 
-        String[] parts = node.data.split("\t");
-        String termPart = parts[0]; // Extract the term part from the data
-        int comparisonResult = term.compareTo(termPart);
-        if (comparisonResult == 0) {
-            searchOpCount++; // Increment the count for equality comparison
-            System.out.println(parts[0]+": "+ parts[1]);
-            return true;
-        } else if (comparisonResult < 0) {
-            searchOpCount++; // Increment the count for less-than comparison
-            return searchRec(node.left, term);
-        } else {
-            searchOpCount++; // Increment the count for greater-than comparison
-            return searchRec(node.right, term);
+        @Override
+        public boolean hasNext() {
+            if (top == 0) {
+                return false;
+            }
+            if (toTerm == null) {
+                return true;
+            }
+            int cmp = stack[top - 1].key.compareTo(toTerm);
+            return cmp < 0 || (cmp == 0 && toInclusive);
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AVLNode node = stack[--top];
+            stack[top] = null;
+            for (AVLNode next = node.right; next != null; next = next.left) {
+                stack[top++] = next;
+            }
+            return node.data;
         }
     }
 
@@ -250,20 +458,49 @@ public class AVLTree {
         return y;
     }
 
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the tree's live metrics, for resetting them.
+     *
+     * @return The metrics.
+     */
+    public AVLMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Copies the tree's metrics together with its current height and node
+     * count.
+     *
+     * @return The snapshot.
+     */
+    public AVLMetrics.Snapshot snapshotMetrics() {
+        AVLNode top = root;
+        return metrics.snapshot(height(top), size);
+    }
+
     // Getters for operation counts
     public int getSearchOpCount() {
-        return searchOpCount;
+        return (int) searchOpCount.sum();
     }
 
     public int getInsertOpCount() {
-        return insertOpCount;
+        return (int) insertOpCount.sum();
     }
 
     public void resetSearchOpCount() {
-        searchOpCount = 0;
+        searchOpCount.reset();
     }
 
     public void resetInsertOpCount() {
-        insertOpCount = 0;
+        insertOpCount.reset();
     }
 }
\ No newline at end of file
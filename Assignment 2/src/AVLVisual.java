@@ -1,8 +1,6 @@
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
+import java.nio.file.NoSuchFileException;
 
 /**
  * @author Chris Scheepers
@@ -77,19 +75,15 @@ public class AVLVisual {
      */
     private static void loadTerms(AVLTree avl, String fileName) {
         try {
-            Scanner scanner = new Scanner(new File(fileName));
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
+            KbFile file = KbFile.open(fileName);
+            for (int i = 0; i < file.size(); i++) {
                 // Assuming each line represents a term in the knowledge base
-                String[] parts = line.split("\t");
-                if (parts.length >= 1) { // Ensure there is at least one part (term)
-                    String term = parts[0];
-                    avl.insert(term); // Insert the term into the AVL tree
-                }
+                avl.insert(file.term(i)); // Insert the term into the AVL tree
             }
-            scanner.close();
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             System.out.println("\nFile not found: " + fileName + "\n");
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
         }
     }
 }
\ No newline at end of file
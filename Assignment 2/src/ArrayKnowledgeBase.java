@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base held in parallel arrays in the order statements
+ *         were added. Every search is a linear scan, so loading is cheap and
+ *         lookups are slow.
+ */
+public class ArrayKnowledgeBase implements KnowledgeBase {
+    private String[] terms = new String[16];
+    private String[] statements = new String[16];
+    private String[] confidences = new String[16];
+    private int size = 0;
+
+    @Override
+    public String name() {
+        return "array";
+    }
+
+    /**
+     * Adds every well-formed line of a file. Repeats are found through a
+     * hash table built for the load, since scanning the array for each line
+     * would make loading quadratic.
+     *
+     * @param file The indexed file to load.
+     */
+    @Override
+    public void load(KbFile file) {
+        int needed = size + file.size();
+        if (needed > terms.length) {
+            terms = Arrays.copyOf(terms, needed);
+            statements = Arrays.copyOf(statements, needed);
+            confidences = Arrays.copyOf(confidences, needed);
+        }
+        HashMap<String, Integer> stored = new HashMap<>(needed * 2);
+        for (int i = 0; i < size; i++) {
+            stored.put(terms[i] + '\t' + statements[i], i);
+        }
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                Integer at = stored.putIfAbsent(file.term(i) + '\t' + file.statement(i), size);
+                if (at != null) {
+                    confidences[at] = file.confidence(i);
+                    continue;
+                }
+                terms[size] = file.term(i);
+                statements[size] = file.statement(i);
+                confidences[size] = file.confidence(i);
+                size++;
+            }
+        }
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        int index = indexOf(term, statement);
+        if (index >= 0) {
+            confidences[index] = confidence;
+            return;
+        }
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            statements = Arrays.copyOf(statements, size * 2);
+            confidences = Arrays.copyOf(confidences, size * 2);
+        }
+        terms[size] = term;
+        statements[size] = statement;
+        confidences[size] = confidence;
+        size++;
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        List<String> found = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (terms[i].equals(term)) {
+                found.add(statements[i]);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        int index = indexOf(term, statement);
+        return index >= 0 ? confidences[index] : null;
+    }
+
+    private int indexOf(String term, String statement) {
+        for (int i = 0; i < size; i++) {
+            if (terms[i].equals(term) && statements[i].equals(statement)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A node in an unbalanced binary search tree keyed by term.
+ */
+class TermBSTNode {
+    final String term;
+    final StatementList statements = new StatementList();
+    TermBSTNode left;
+    TermBSTNode right;
+
+    /**
+     * Constructs a TermBSTNode with no statements.
+     *
+     * @param term The term the node is keyed by.
+     */
+    TermBSTNode(String term) {
+        this.term = term;
+    }
+}
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in an unbalanced binary search tree keyed by term.
+ *         Searches take time proportional to the depth of the term, which
+ *         depends on the order the terms were added in.
+ */
+public class BSTKnowledgeBase implements KnowledgeBase {
+    private TermBSTNode root;
+
+    @Override
+    public String name() {
+        return "bst";
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        if (root == null) {
+            root = new TermBSTNode(term);
+            root.statements.put(statement, confidence);
+            return;
+        }
+        // Iterative, so a long chain from sorted input cannot overflow the stack
+        TermBSTNode node = root;
+        while (true) {
+            int cmp = term.compareTo(node.term);
+            if (cmp == 0) {
+                node.statements.put(statement, confidence);
+                return;
+            }
+            TermBSTNode next = cmp < 0 ? node.left : node.right;
+            if (next == null) {
+                next = new TermBSTNode(term);
+                next.statements.put(statement, confidence);
+                if (cmp < 0) {
+                    node.left = next;
+                } else {
+                    node.right = next;
+                }
+                return;
+            }
+            node = next;
+        }
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        TermBSTNode node = find(term);
+        return node != null ? node.statements.statements() : Collections.emptyList();
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        TermBSTNode node = find(term);
+        return node != null ? node.statements.confidenceOf(statement) : null;
+    }
+
+    private TermBSTNode find(String term) {
+        TermBSTNode node = root;
+        while (node != null) {
+            int cmp = term.compareTo(node.term);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Chris Scheepers
+ *         Runs a whole file of queries against a read-only TermAVLTree and
+ *         writes the results, in query order, through one buffered writer.
+ */
+public class BatchQueryRunner {
+    /** Number of queries formatted by one task. */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Looks up every query in a file and writes the results to another file.
+     * The tree must not be modified while the batch runs.
+     *
+     * @param tree        The tree to search.
+     * @param queryFile   The file of queries, one term per line.
+     * @param outputFile  The file to write results to.
+     * @param threads     The number of lookup threads.
+     * @param sortedMerge Whether to answer the queries with one in-order walk
+     *                    of the tree instead of one descent per query.
+     * @return The number of queries that were found.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static int run(TermAVLTree tree, String queryFile, String outputFile, int threads, boolean sortedMerge)
+            throws IOException {
+        String[] queries = readQueries(queryFile);
+        TermAVLNode[] results = sortedMerge ? lookupSorted(tree, queries) : null;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger found = new AtomicInteger();
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(outputFile), StandardCharsets.UTF_8)) {
+            // Keep a bounded window of blocks in flight and write them back in order
+            ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+            for (int start = 0; start < queries.length; start += BLOCK_SIZE) {
+                int from = start;
+                int to = Math.min(start + BLOCK_SIZE, queries.length);
+                pending.add(pool.submit(() -> formatBlock(tree, queries, results, from, to, found)));
+                if (pending.size() >= threads * 4) {
+                    writer.write(pending.remove().get());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writer.write(pending.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch query failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return found.get();
+    }
+
+    /**
+     * Reads and trims every line of a query file.
+     *
+     * @param queryFile The file of queries.
+     * @return The queries in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    private static String[] readQueries(String queryFile) throws IOException {
+        KbFile file = KbFile.open(queryFile);
+        String[] queries = new String[file.size()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = file.line(i).trim();
+        }
+        return queries;
+    }
+
+    /**
+     * Formats the results of a block of queries in the same layout that
+     * GenericsKbAVLApp prints.
+     *
+     * @param tree    The tree to search.
+     * @param queries All of the queries.
+     * @param results Pre-computed results from a sorted merge, or null to look
+     *                each query up in the tree.
+     * @param from    The first query of the block.
+     * @param to      One past the last query of the block.
+     * @param found   The count of found queries to add to.
+     * @return The formatted block.
+     */
+    private static String formatBlock(TermAVLTree tree, String[] queries, TermAVLNode[] results, int from, int to,
+            AtomicInteger found) {
+        StringBuilder out = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            TermAVLNode node = results != null ? results[i] : tree.get(queries[i]);
+            out.append("Query: ").append(queries[i]).append('\n');
+            if (node == null) {
+                out.append("Term not found: ").append(queries[i]).append('\n');
+            } else {
+                found.incrementAndGet();
+                for (int j = 0; j < node.count; j++) {
+                    out.append(node.term).append(": ").append(node.statements[j]).append('\n');
+                }
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Answers every query with a single in-order walk of the tree, merged
+     * against a sorted copy of the queries. This costs O(n + q log q) rather
+     * than O(q log n), which wins when the batch is large next to the tree.
+     * The queries are sorted as strings rather than through a boxed index
+     * array, and each query then finds its result by binary search.
+     *
+     * @param tree    The tree to search.
+     * @param queries The queries in file order.
+     * @return The node for each query, or null where the term is absent.
+     */
+    static TermAVLNode[] lookupSorted(TermAVLTree tree, String[] queries) {
+        String[] sorted = queries.clone();
+        Arrays.parallelSort(sorted);
+
+        // Match the sorted queries against the terms in one in-order walk
+        TermAVLNode[] sortedResults = new TermAVLNode[sorted.length];
+        TermAVLNode[] stack = new TermAVLNode[tree.root == null ? 0 : tree.root.height];
+        int top = 0;
+        TermAVLNode node = tree.root;
+        int q = 0;
+        while (q < sorted.length && (node != null || top > 0)) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            // Skip queries that sort before this term, then match any equal to it
+            while (q < sorted.length && sorted[q].compareTo(node.term) < 0) {
+                q++;
+            }
+            while (q < sorted.length && sorted[q].equals(node.term)) {
+                sortedResults[q++] = node;
+            }
+            node = node.right;
+        }
+
+        // Equal queries share a result, so any copy found by binary search will do
+        TermAVLNode[] results = new TermAVLNode[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            results[i] = sortedResults[Arrays.binarySearch(sorted, queries[i])];
+        }
+        return results;
+    }
+}
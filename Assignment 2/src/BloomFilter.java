@@ -0,0 +1,97 @@
+/**
+ * @author Chris Scheepers
+ *         A Bloom filter over strings. It answers "definitely absent" or
+ *         "possibly present", so lookups for missing terms can be rejected
+ *         without touching the tree.
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+    private final int expected;
+
+    /**
+     * Constructs a filter sized for a number of items and a target false
+     * positive rate.
+     *
+     * @param expected The number of items the filter is sized for, at least 1.
+     * @param fpp      The target false positive probability, strictly between
+     *                 0 and 1.
+     * @throws IllegalArgumentException If expected or fpp is out of range.
+     */
+    public BloomFilter(int expected, double fpp) {
+        if (expected < 1) {
+            throw new IllegalArgumentException("Expected number of items must be at least 1: " + expected);
+        }
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1: " + fpp);
+        }
+        this.expected = expected;
+        // Optimal sizes: m = -n ln p / (ln 2)^2 and k = (m / n) ln 2
+        long m = (long) Math.ceil(-this.expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        numBits = Math.max(64, m);
+        bits = new long[(int) ((numBits + 63) / 64)];
+        numHashes = Math.max(1, (int) Math.round((double) numBits / this.expected * Math.log(2)));
+    }
+
+    /**
+     * Returns the number of items the filter was sized for.
+     *
+     * @return The expected number of items.
+     */
+    public int getExpected() {
+        return expected;
+    }
+
+    /**
+     * Adds a string to the filter.
+     *
+     * @param value The string to add.
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether a string may have been added.
+     *
+     * @param value The string to check.
+     * @return false if the string was definitely never added.
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes a 64-bit hash of a string, whose two halves seed the k probe
+     * positions.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // Final mix so both halves depend on every character
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,116 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         An append-only store of bytes addressed by long offsets, built from
+ *         fixed-size ByteBuffer chunks. With direct chunks the bytes live
+ *         outside the Java heap, so the garbage collector only ever sees the
+ *         chunk list, however much text is stored. Strings are decoded from
+ *         the bytes only when they are asked for.
+ */
+public class ByteArena {
+    private static final int CHUNK_BITS = 20; // 1 MiB chunks
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final boolean direct;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Constructs an empty arena.
+     *
+     * @param direct Whether to keep the bytes off the Java heap.
+     */
+    public ByteArena(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Returns whether the bytes are kept off the Java heap.
+     *
+     * @return true for direct chunks.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the number of bytes stored.
+     *
+     * @return The size of the arena in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes reserved by the chunks.
+     *
+     * @return The capacity of the arena in bytes.
+     */
+    public long capacity() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    /**
+     * Appends bytes to the end of the arena. The bytes may span chunks.
+     *
+     * @param bytes  The array holding the bytes.
+     * @param offset The start of the bytes in the array.
+     * @param length The number of bytes.
+     * @return The arena offset of the first byte.
+     */
+    public long append(byte[] bytes, int offset, int length) {
+        long start = size;
+        while (length > 0) {
+            int pos = (int) (size & (CHUNK_SIZE - 1));
+            if (pos == 0 && (size >>> CHUNK_BITS) == chunks.size()) {
+                chunks.add(direct ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+            }
+            int n = Math.min(length, CHUNK_SIZE - pos);
+            chunks.get((int) (size >>> CHUNK_BITS)).put(pos, bytes, offset, n);
+            offset += n;
+            length -= n;
+            size += n;
+        }
+        return start;
+    }
+
+    /**
+     * Copies bytes out of the arena.
+     *
+     * @param offset The arena offset of the first byte.
+     * @param dest   The array to copy into.
+     * @param start  The start position in the array.
+     * @param length The number of bytes.
+     */
+    public void read(long offset, byte[] dest, int start, int length) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside arena of " + size);
+        }
+        while (length > 0) {
+            int pos = (int) (offset & (CHUNK_SIZE - 1));
+            int n = Math.min(length, CHUNK_SIZE - pos);
+            chunks.get((int) (offset >>> CHUNK_BITS)).get(pos, dest, start, n);
+            offset += n;
+            start += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes from the arena into a new string.
+     *
+     * @param offset The arena offset of the first byte.
+     * @param length The number of bytes.
+     * @return The decoded string.
+     */
+    public String decode(long offset, int length) {
+        byte[] bytes = new byte[length];
+        read(offset, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
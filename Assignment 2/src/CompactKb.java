@@ -0,0 +1,474 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base laid out for a small heap. Terms are
+ *         stored once each, sorted and front-coded in blocks: every block
+ *         starts with a full term, and each following term keeps only the
+ *         length of the prefix it shares with the previous term plus its own
+ *         suffix. Statements are UTF-8 bytes in a ByteArena addressed by long
+ *         offsets, grouped by term. Confidence scores are kept as written,
+ *         each distinct score once in a small table, and every statement
+ *         holds the int id of its score.
+ *         Apart from a handful of arrays there is no per-entry object, and
+ *         with an off-heap arena the statement text is not on the heap at all.
+ *         Terms and statements are fixed once built; only confidence scores
+ *         can be changed, so CompactKnowledgeBase keeps later additions in a
+ *         separate overlay.
+ */
+public class CompactKb {
+    /** Terms per front-coded block. Larger blocks save space but scan more. */
+    private static final int BLOCK_SIZE = 16;
+
+    private final byte[] termBytes; // Front-coded blocks of sorted terms
+    private final int[] blockOffsets; // Start of each block in termBytes
+    private final int termCount;
+    private final int[] firstStatement; // termCount + 1 entries
+    private final ByteArena statements;
+    private final long[] statementOffsets; // statementCount + 1 entries
+    private final int[] confidences; // Id of each statement's score in confidenceTexts
+    private String[] confidenceTexts; // Each distinct score once, as written
+    private final HashMap<String, Integer> confidenceIds;
+
+    private CompactKb(byte[] termBytes, int[] blockOffsets, int termCount, int[] firstStatement,
+            ByteArena statements, long[] statementOffsets, int[] confidences,
+            HashMap<String, Integer> confidenceIds) {
+        this.termBytes = termBytes;
+        this.blockOffsets = blockOffsets;
+        this.termCount = termCount;
+        this.firstStatement = firstStatement;
+        this.statements = statements;
+        this.statementOffsets = statementOffsets;
+        this.confidences = confidences;
+        this.confidenceIds = confidenceIds;
+        confidenceTexts = new String[confidenceIds.size()];
+        confidenceIds.forEach((text, id) -> confidenceTexts[id] = text);
+    }
+
+    /**
+     * Builds a compact knowledge base from every well-formed line of a file,
+     * keeping the statements on the heap.
+     *
+     * @param file The indexed file to read.
+     * @return The compact knowledge base.
+     */
+    public static CompactKb build(KbFile file) {
+        return build(file, false);
+    }
+
+    /**
+     * Builds a compact knowledge base from every well-formed line of a file.
+     * Statements about the same term keep their file order, and a statement
+     * repeated for a term is kept once, at its first place, with the
+     * confidence score of its last copy.
+     *
+     * @param file    The indexed file to read.
+     * @param offHeap Whether to keep the statement bytes off the Java heap.
+     * @return The compact knowledge base.
+     */
+    public static CompactKb build(KbFile file, boolean offHeap) {
+        int lineCount = 0;
+        long[] keys = new long[file.size()];
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                // Term prefix, flipped so signed order is unsigned order, then the line
+                keys[lineCount++] = ((long) (file.termPrefix(i) ^ Integer.MIN_VALUE) << 32) | i;
+            }
+        }
+        // Sort by UTF-8 bytes so lookups can compare encoded terms directly:
+        // first by prefix on primitive keys, then each run of equal prefixes by
+        // the full term, read straight from the mapped file
+        Arrays.parallelSort(keys, 0, lineCount);
+        int[] order = new int[lineCount];
+        for (int s = 0; s < lineCount; s++) {
+            order[s] = (int) keys[s];
+        }
+        int[] scratch = new int[0];
+        for (int from = 0; from < lineCount;) {
+            int to = from + 1;
+            while (to < lineCount && keys[to] >>> 32 == keys[from] >>> 32) {
+                to++;
+            }
+            if (to - from > 1) {
+                if (scratch.length < to - from) {
+                    scratch = new int[to - from];
+                }
+                mergeSort(file, order, from, to, scratch);
+            }
+            from = to;
+        }
+        keys = null;
+
+        Growable termOut = new Growable();
+        ByteArena statementOut = new ByteArena(offHeap);
+        int[] blockOffsets = new int[lineCount / BLOCK_SIZE + 1];
+        int[] firstStatement = new int[lineCount + 1];
+        long[] statementOffsets = new long[lineCount + 1];
+        int[] confidences = new int[lineCount];
+        HashMap<String, Integer> confidenceIds = new HashMap<>();
+        int termId = -1;
+        int kept = 0;
+        byte[] previous = null;
+        for (int s = 0; s < lineCount;) {
+            int end = s + 1;
+            while (end < lineCount && file.compareTerms(order[end], order[s]) == 0) {
+                end++;
+            }
+            byte[] term = file.term(order[s]).getBytes(StandardCharsets.UTF_8);
+            termId++;
+            firstStatement[termId] = kept;
+            if (termId % BLOCK_SIZE == 0) {
+                blockOffsets[termId / BLOCK_SIZE] = termOut.size;
+                termOut.writeVarInt(term.length);
+                termOut.write(term, 0, term.length);
+            } else {
+                int shared = Arrays.mismatch(previous, term);
+                shared = shared < 0 ? term.length : shared;
+                termOut.writeVarInt(shared);
+                termOut.writeVarInt(term.length - shared);
+                termOut.write(term, shared, term.length - shared);
+            }
+            previous = term;
+
+            // A repeated statement keeps its first place and its last score
+            HashMap<String, Integer> seen = end - s > 1 ? new HashMap<>() : null;
+            for (; s < end; s++) {
+                int line = order[s];
+                String text = file.statement(line);
+                if (seen != null) {
+                    Integer at = seen.putIfAbsent(text, kept);
+                    if (at != null) {
+                        confidences[at] = idOf(confidenceIds, file.confidence(line));
+                        continue;
+                    }
+                }
+                byte[] statement = text.getBytes(StandardCharsets.UTF_8);
+                statementOffsets[kept] = statementOut.append(statement, 0, statement.length);
+                confidences[kept] = idOf(confidenceIds, file.confidence(line));
+                kept++;
+            }
+        }
+        int count = termId + 1;
+        firstStatement[count] = kept;
+        statementOffsets[kept] = statementOut.size();
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        return new CompactKb(termOut.trimmed(), Arrays.copyOf(blockOffsets, blocks), count,
+                Arrays.copyOf(firstStatement, count + 1), statementOut,
+                kept < lineCount ? Arrays.copyOf(statementOffsets, kept + 1) : statementOffsets,
+                kept < lineCount ? Arrays.copyOf(confidences, kept) : confidences, confidenceIds);
+    }
+
+    /** Returns the id of a confidence score, giving it the next id if new. */
+    private static int idOf(HashMap<String, Integer> confidenceIds, String confidence) {
+        Integer id = confidenceIds.get(confidence);
+        if (id == null) {
+            id = confidenceIds.size();
+            confidenceIds.put(confidence, id);
+        }
+        return id;
+    }
+
+    /**
+     * Sorts a range of line indices by term with a stable merge sort, so lines
+     * with the same term keep their file order.
+     *
+     * @param file    The file the lines belong to.
+     * @param order   The line indices.
+     * @param from    The first index of the range.
+     * @param to      One past the last index of the range.
+     * @param scratch Room for at least to - from indices.
+     */
+    private static void mergeSort(KbFile file, int[] order, int from, int to, int[] scratch) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(file, order, from, mid, scratch);
+        mergeSort(file, order, mid, to, scratch);
+        if (file.compareTerms(order[mid - 1], order[mid]) <= 0) {
+            return; // Already in order, as for a run of one term
+        }
+        System.arraycopy(order, from, scratch, 0, mid - from);
+        int i = 0;
+        int j = mid;
+        int k = from;
+        while (i < mid - from && j < to) {
+            order[k++] = file.compareTerms(order[j], scratch[i]) < 0 ? order[j++] : scratch[i++];
+        }
+        System.arraycopy(scratch, i, order, k, mid - from - i);
+    }
+
+    /**
+     * Finds the id of a term by binary search over the first term of each
+     * block, then a scan decoding the front-coded terms within the block.
+     *
+     * @param term The term to find.
+     * @return The term id, or -1 if the term is absent.
+     */
+    public int find(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int block = -1;
+        int[] pos = new int[1];
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            pos[0] = blockOffsets[mid];
+            int length = readVarInt(termBytes, pos);
+            int cmp = Arrays.compareUnsigned(termBytes, pos[0], pos[0] + length, key, 0, key.length);
+            if (cmp == 0) {
+                return mid * BLOCK_SIZE;
+            } else if (cmp < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        // Decode the rest of the block into a scratch buffer
+        pos[0] = blockOffsets[block];
+        int length = readVarInt(termBytes, pos);
+        byte[] current = Arrays.copyOfRange(termBytes, pos[0], pos[0] + Math.max(length, key.length));
+        pos[0] += length;
+        int end = Math.min(termCount, (block + 1) * BLOCK_SIZE);
+        for (int id = block * BLOCK_SIZE + 1; id < end; id++) {
+            int shared = readVarInt(termBytes, pos);
+            int suffix = readVarInt(termBytes, pos);
+            length = shared + suffix;
+            if (current.length < length) {
+                current = Arrays.copyOf(current, Math.max(length, current.length * 2));
+            }
+            System.arraycopy(termBytes, pos[0], current, shared, suffix);
+            pos[0] += suffix;
+            int cmp = Arrays.compareUnsigned(current, 0, length, key, 0, key.length);
+            if (cmp == 0) {
+                return id;
+            } else if (cmp > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of distinct terms.
+     *
+     * @return The number of terms.
+     */
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * Returns the number of statements about a term.
+     *
+     * @param termId The id of the term.
+     * @return The number of statements.
+     */
+    public int statementCount(int termId) {
+        return firstStatement[termId + 1] - firstStatement[termId];
+    }
+
+    /**
+     * Decodes a statement about a term. Statements are only turned into
+     * strings here, when a result is needed.
+     *
+     * @param termId The id of the term.
+     * @param index  The index of the statement among the term's statements.
+     * @return The statement.
+     */
+    public String statement(int termId, int index) {
+        int s = firstStatement[termId] + index;
+        return statements.decode(statementOffsets[s], (int) (statementOffsets[s + 1] - statementOffsets[s]));
+    }
+
+    /**
+     * Returns the confidence score of a statement about a term.
+     *
+     * @param termId The id of the term.
+     * @param index  The index of the statement among the term's statements.
+     * @return The confidence score, as written.
+     */
+    public String confidence(int termId, int index) {
+        return confidenceTexts[confidences[firstStatement[termId] + index]];
+    }
+
+    /**
+     * Finds a statement about a term.
+     *
+     * @param termId    The id of the term.
+     * @param statement The statement to find.
+     * @return Its index among the term's statements, or -1 if absent.
+     */
+    public int indexOf(int termId, String statement) {
+        for (int i = 0; i < statementCount(termId); i++) {
+            if (statement(termId, i).equals(statement)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the confidence score of a statement about a term.
+     *
+     * @param termId     The id of the term.
+     * @param index      The index of the statement among the term's statements.
+     * @param confidence The new confidence score, as written.
+     */
+    public void setConfidence(int termId, int index, String confidence) {
+        int id = idOf(confidenceIds, confidence);
+        if (id == confidenceTexts.length) {
+            confidenceTexts = Arrays.copyOf(confidenceTexts, id * 2 + 1);
+        }
+        confidenceTexts[id] = confidence;
+        confidences[firstStatement[termId] + index] = id;
+    }
+
+    /**
+     * Estimates the heap used by this knowledge base's arrays.
+     *
+     * @return The approximate size in bytes.
+     */
+    public long estimatedHeapBytes() {
+        long bytes = arrayBytes(termBytes.length, 1) + arrayBytes(blockOffsets.length, 4)
+                + arrayBytes(firstStatement.length, 4) + arrayBytes(statementOffsets.length, 8)
+                + arrayBytes(confidences.length, 4) + arrayBytes(confidenceTexts.length, 8);
+        for (String text : confidenceIds.keySet()) {
+            bytes += 24 + arrayBytes(text.length(), 1) + 48; // String, its bytes and a map entry
+        }
+        return statements.isDirect() ? bytes : bytes + statements.capacity();
+    }
+
+    /**
+     * Returns the bytes held outside the Java heap.
+     *
+     * @return The off-heap size in bytes, 0 when the statements are on the heap.
+     */
+    public long offHeapBytes() {
+        return statements.isDirect() ? statements.capacity() : 0;
+    }
+
+    private static long arrayBytes(long length, int elementSize) {
+        return 16 + length * elementSize; // Array header plus elements
+    }
+
+    private static int readVarInt(byte[] bytes, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * A growable byte array for building the front-coded terms.
+     */
+    private static class Growable {
+        byte[] bytes = new byte[1 << 12];
+        int size = 0;
+
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        byte[] trimmed() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Measures the heap held per entry, and the time a full collection takes
+     * with the knowledge base loaded, for the line-per-String layout used by
+     * the trees and for this compact layout with statements on and off the
+     * heap.
+     *
+     * @param args The knowledge base file name (default GenericsKB.txt).
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "GenericsKB.txt";
+        KbFile file = KbFile.open(fileName);
+        int entries = Math.max(1, file.size());
+
+        long before = usedHeap();
+        String[] lines = new String[file.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = file.line(i); // One String per entry, as in AVLNode.data
+        }
+        report("String per line:  ", usedHeap() - before, 0, entries);
+        lines = null;
+
+        before = usedHeap();
+        CompactKb compact = build(file, false);
+        report("Compact, on-heap: ", usedHeap() - before, compact.offHeapBytes(), entries);
+        System.out.println("Distinct terms: " + compact.termCount());
+        compact = null;
+
+        before = usedHeap();
+        compact = build(file, true);
+        report("Compact, off-heap:", usedHeap() - before, compact.offHeapBytes(), entries);
+    }
+
+    private static void report(String label, long heap, long offHeap, int entries) {
+        System.out.printf("%s heap %d bytes (%.1f per entry), off-heap %d bytes, full GC %.1f ms%n", label, heap,
+                (double) heap / entries, offHeap, fullGcMillis());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Times a few full collections with whatever is currently live. */
+    private static double fullGcMillis() {
+        int runs = 5;
+        long before = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            before += gc.getCollectionTime();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            System.gc();
+        }
+        long wall = System.nanoTime() - start;
+        long after = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            after += gc.getCollectionTime();
+        }
+        // Collector time has millisecond resolution; fall back to wall time
+        return after > before ? (double) (after - before) / runs : wall / 1e6 / runs;
+    }
+}
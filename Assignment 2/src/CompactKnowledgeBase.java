@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in a CompactKb, for loading large files into a
+ *         small heap. The file is built into the compact layout in one pass;
+ *         statements added afterwards, which the compact layout cannot take,
+ *         go into a small hash table that is searched after it.
+ */
+public class CompactKnowledgeBase implements KnowledgeBase {
+    private final boolean offHeap;
+    private CompactKb base; // Null until a file is loaded
+    private final HashKnowledgeBase added = new HashKnowledgeBase();
+    private boolean anyAdded = false;
+
+    /**
+     * Constructs an empty knowledge base.
+     *
+     * @param offHeap Whether to keep the loaded statement text off the Java
+     *                heap.
+     */
+    public CompactKnowledgeBase(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    @Override
+    public String name() {
+        return offHeap ? "offheap" : "compact";
+    }
+
+    /**
+     * Adds every well-formed line of a file. An empty knowledge base is built
+     * in the compact layout; otherwise the lines are added one at a time.
+     *
+     * @param file The indexed file to load.
+     */
+    @Override
+    public void load(KbFile file) {
+        if (base == null && !anyAdded) {
+            base = CompactKb.build(file, offHeap);
+        } else {
+            KnowledgeBase.super.load(file);
+        }
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        int termId = base != null ? base.find(term) : -1;
+        int index = termId >= 0 ? base.indexOf(termId, statement) : -1;
+        if (index >= 0) {
+            base.setConfidence(termId, index, confidence);
+        } else {
+            added.add(term, statement, confidence);
+            anyAdded = true;
+        }
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        int termId = base != null ? base.find(term) : -1;
+        List<String> later = anyAdded ? added.searchByTerm(term) : Collections.<String>emptyList();
+        if (termId < 0) {
+            return later;
+        }
+        List<String> found = new ArrayList<>(base.statementCount(termId) + later.size());
+        for (int i = 0; i < base.statementCount(termId); i++) {
+            found.add(base.statement(termId, i));
+        }
+        found.addAll(later);
+        return found;
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        int termId = base != null ? base.find(term) : -1;
+        int index = termId >= 0 ? base.indexOf(termId, statement) : -1;
+        if (index >= 0) {
+            return base.confidence(termId, index);
+        }
+        return anyAdded ? added.searchByTermAndStatement(term, statement) : null;
+    }
+}
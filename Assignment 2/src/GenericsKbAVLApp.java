@@ -1,5 +1,11 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -7,15 +13,47 @@ import java.util.Scanner;
  * Main class to demonstrate the AVL tree application.
  */
 public class GenericsKbAVLApp {
-    private static AVLTree avl;
+    private static TermAVLTree avl;
+    private static PipelinedLoader loader; // Non-null while a load is in progress
+    private static String loadingFile;
+    private static PipelinedLoader unreported; // Finished load not yet reported
+    private static int answeredWhileLoading = 0;
+    private static boolean useSnapshot = false; // Whether to read and write <file>.snap
 
     /**
-     * Main method to run the AVL tree application.
+     * Main method to run the AVL tree application. With no file arguments the
+     * file names are read from the keyboard, the knowledge base is loaded, and
+     * then every query is answered and printed. With {@code --while-loading}
+     * queries are instead answered while the knowledge base is still loading.
+     * With the arguments
+     * {@code <knowledge base> <query file> <output file> [--merge]} the
+     * queries are run as a parallel batch and written to the output file.
+     * In either mode {@code --snapshot} loads a valid binary snapshot of the
+     * knowledge base instead of the text, and writes one after loading text.
      * 
      * @param args The command line arguments.
      */
     public static void main(String[] args) {
-        avl = new AVLTree();
+        avl = new TermAVLTree();
+
+        List<String> files = new ArrayList<>();
+        boolean sortedMerge = false;
+        boolean whileLoading = false;
+        for (String arg : args) {
+            if (arg.equals("--merge")) {
+                sortedMerge = true;
+            } else if (arg.equals("--while-loading")) {
+                whileLoading = true;
+            } else if (arg.equals("--snapshot")) {
+                useSnapshot = true;
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() >= 3) {
+            runBatch(files.get(0), files.get(1), files.get(2), sortedMerge);
+            return;
+        }
 
         // Prompt user for knowledge base filename
         Scanner scanner = new Scanner(System.in);
@@ -28,42 +66,183 @@ public class GenericsKbAVLApp {
 
         scanner.close();
 
-        // Load knowledge base from file
-        loadKnowledgeBase(knowledgeBaseFile);
+        // Start loading the knowledge base, without waiting for it to finish
+        if (loadKnowledgeBase(knowledgeBaseFile, true) && whileLoading && loader != null) {
+            System.out.println("\nAnswering queries while the knowledge base loads. A query is answered from the"
+                    + " lines loaded so far, and one whose term is not loaded yet waits for loading to finish."
+                    + " Queries answered early are not counted in Search Operations.\n");
+        } else {
+            finishLoading(true); // Every query sees the whole knowledge base
+        }
 
         // Perform searches based on queries
         searchQueries(queryFile);
+        finishLoading(true);
 
         // Print operation counts
         System.out.println("Search Operations: " + avl.getSearchOpCount());
         System.out.println("Insert Operations: " + avl.getInsertOpCount());
+        if (answeredWhileLoading > 0) {
+            System.out.println("(" + answeredWhileLoading + " queries were answered while the knowledge base was"
+                    + " loading and are not counted in Search Operations.)");
+        }
+        if (avl.isBulkBuilt()) {
+            System.out.println("(The tree was bulk-built from sorted terms, so loading made no insert comparisons"
+                    + " and searches ran on a perfectly balanced tree.)");
+        }
     }
 
     /**
-     * Loads the knowledge base from the specified file.
+     * Loads the knowledge base from the specified file. If snapshots are in
+     * use, a valid binary snapshot of the file is used when there is one.
+     * Otherwise the text is
+     * streamed through a PipelinedLoader, which may be left running in the
+     * background, or, when the whole tree is needed at once and the file is
+     * small enough to map into memory, indexed and built in one pass. If
+     * snapshots are in use, one is written for the next start once the text
+     * has been loaded.
      * 
-     * @param fileName The name of the file containing the knowledge base.
+     * @param fileName     The name of the file containing the knowledge base.
+     * @param inBackground Whether to return as soon as loading has started,
+     *                     leaving finishLoading to wait for it.
+     * @return true if the knowledge base was loaded or is loading, false if it
+     *         could not be read.
      */
-    private static void loadKnowledgeBase(String fileName) {
+    private static boolean loadKnowledgeBase(String fileName, boolean inBackground) {
+        String snapshotFile = KbSnapshot.snapshotFileName(fileName);
         try {
-            Scanner fileScanner = new Scanner(new File(fileName));
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine();
-                // Assuming each line represents a statement in the knowledge base
-                String[] parts = line.split("\t");
-                if (parts.length == 3) { // Ensure there are three parts (term, sentence, confidence score)
-                    avl.insert(line);
-                }
+            TermAVLTree snapshot = useSnapshot ? KbSnapshot.load(snapshotFile, fileName) : null;
+            if (snapshot != null) {
+                avl = snapshot;
+                avl.enableBloomFilter(0.01);
+                System.out.println("\nKnowledge base loaded successfully from snapshot.\n");
+                return true;
+            }
+        } catch (IOException e) {
+            System.out.println("\nIgnoring unreadable snapshot: " + e.getMessage());
+        }
+        try {
+            // Only lines with three parts (term, sentence, confidence score) are kept
+            if (inBackground || Files.size(Path.of(fileName)) > Integer.MAX_VALUE) {
+                PipelinedLoader started = new PipelinedLoader(new TermAVLTree(),
+                        Runtime.getRuntime().availableProcessors());
+                started.start(fileName);
+                loader = started;
+                loadingFile = fileName;
+                return inBackground || finishLoading(true);
             }
+            KbFile file = KbFile.open(fileName);
+            printSkipped(fileName, file.malformedWarnings(10));
+            avl = TermAVLTree.build(file);
+            avl.enableBloomFilter(0.01);
             System.out.println("\nKnowledge base loaded successfully.\n");
-            fileScanner.close();
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             System.out.println("\nFile not found: " + fileName + "\n");
+            return false;
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+            return false;
+        }
+        writeSnapshot(fileName);
+        return true;
+    }
+
+    /**
+     * Waits for a load running in the background to finish, then makes the
+     * loaded tree the one searched and writes its snapshot. Reporting the
+     * load can be held back so it does not land among query results; it is
+     * then printed by the next call that reports.
+     * 
+     * @param report Whether to print the outcome of the load now.
+     * @return true if the knowledge base is loaded, false if loading failed.
+     */
+    private static boolean finishLoading(boolean report) {
+        if (loader != null) {
+            PipelinedLoader finished = loader;
+            loader = null;
+            try {
+                avl = finished.await();
+            } catch (IOException e) {
+                System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+                return false;
+            }
+            avl.enableBloomFilter(0.01);
+            unreported = finished;
+            writeSnapshot(loadingFile);
+        }
+        if (report && unreported != null) {
+            printSkipped(loadingFile, unreported.malformedWarnings());
+            System.out.println("\nKnowledge base loaded successfully (" + unreported.getLinesLoaded()
+                    + " lines).\n");
+            unreported = null;
         }
+        return true;
     }
 
     /**
-     * Perform searches based on queries from the specified file.
+     * Writes a snapshot of the loaded tree for the next start, if snapshots
+     * are in use. A failure is reported and otherwise ignored, since the tree
+     * itself is still usable.
+     * 
+     * @param fileName The name of the file the tree was loaded from.
+     */
+    private static void writeSnapshot(String fileName) {
+        if (!useSnapshot) {
+            return;
+        }
+        String snapshotFile = KbSnapshot.snapshotFileName(fileName);
+        try {
+            KbSnapshot.write(avl, snapshotFile, fileName);
+        } catch (IOException e) {
+            System.out.println("Could not write snapshot " + snapshotFile + ": " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Warns about the lines of a file that were skipped while loading.
+     * 
+     * @param fileName The name of the file.
+     * @param warnings One message per malformed line.
+     */
+    private static void printSkipped(String fileName, List<String> warnings) {
+        if (!warnings.isEmpty()) {
+            System.out.println("\nSkipped malformed lines in " + fileName + ":");
+            for (String warning : warnings) {
+                System.out.println("  " + warning);
+            }
+        }
+    }
+
+    /**
+     * Runs every query in a file as one parallel batch against the loaded tree.
+     * Nothing is run if the knowledge base cannot be loaded.
+     * 
+     * @param knowledgeBaseFile The name of the file containing the knowledge base.
+     * @param queryFile         The name of the file containing the queries.
+     * @param outputFile        The name of the file to write results to.
+     * @param sortedMerge       Whether to answer queries with one sorted walk of the tree.
+     */
+    private static void runBatch(String knowledgeBaseFile, String queryFile, String outputFile, boolean sortedMerge) {
+        if (!loadKnowledgeBase(knowledgeBaseFile, false)) {
+            System.out.println("Batch not run: the knowledge base could not be loaded.");
+            return;
+        }
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int found = BatchQueryRunner.run(avl, queryFile, outputFile, threads, sortedMerge);
+            System.out.println(found + " queries found. Results written to " + outputFile + ".");
+        } catch (NoSuchFileException e) {
+            System.out.println("\nFile not found: " + queryFile + "\n");
+        } catch (IOException e) {
+            System.out.println("\nError running queries: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Perform searches based on queries from the specified file. If the
+     * knowledge base is still loading, a query is answered from the lines
+     * loaded so far; a term that is not found yet may be further on in the
+     * file, so that query waits for loading to finish before it is answered.
      * 
      * @param fileName The name of the file containing the queries.
      */
@@ -73,7 +252,15 @@ public class GenericsKbAVLApp {
             while (fileScanner.hasNextLine()) {
                 String query = fileScanner.nextLine().trim();
                 System.out.println("Query: " + query);
-                boolean found = avl.search(query); // Search for the query term
+                boolean found = loader != null && loader.search(query);
+                if (found) {
+                    answeredWhileLoading++;
+                } else {
+                    if (!finishLoading(false)) {
+                        break;
+                    }
+                    found = avl.search(query); // Search for the query term
+                }
                 if (!found) {
                     System.out.println("Term not found: " + query);
                 }
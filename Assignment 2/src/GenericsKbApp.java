@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * @author Chris Scheepers
+ * Main class for the knowledge base application, with the data structure
+ * chosen on the command line:
+ * {@code --backend array|bst|avl|hash|sorted|skiplist|compact|offheap}.
+ * The default is avl.
+ */
+public class GenericsKbApp {
+    private static final String USAGE = "Usage: java GenericsKbApp"
+            + " [--backend array|bst|avl|hash|sorted|skiplist|compact|offheap]";
+
+    private static String backend = "avl";
+    private static KnowledgeBase kb;
+
+    /**
+     * Loads the knowledge base from the specified file into a new, empty
+     * knowledge base of the chosen kind.
+     *
+     * @param fileName The name of the file containing the knowledge base.
+     */
+    private static void loadKnowledgeBase(String fileName) {
+        try {
+            KbFile file = KbFile.open(fileName);
+            printSkipped(fileName, file.malformedWarnings(10));
+            KnowledgeBase loaded = KnowledgeBase.create(backend);
+            loaded.load(file);
+            kb = loaded;
+            System.out.println("\nKnowledge base loaded successfully.\n");
+        } catch (NoSuchFileException e) {
+            System.out.println("\nFile not found: " + fileName + "\n");
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Warns about the lines of a file that were skipped while loading.
+     *
+     * @param fileName The name of the file.
+     * @param warnings One message per malformed line.
+     */
+    private static void printSkipped(String fileName, List<String> warnings) {
+        if (!warnings.isEmpty()) {
+            System.out.println("\nSkipped malformed lines in " + fileName + ":");
+            for (String warning : warnings) {
+                System.out.println("  " + warning);
+            }
+        }
+    }
+
+    /**
+     * Main method to run the knowledge base application.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--backend") && i + 1 < args.length) {
+                backend = args[++i];
+            } else if (args[i].startsWith("--backend=")) {
+                backend = args[i].substring("--backend=".length());
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (KnowledgeBase.create(backend) == null) {
+            System.out.println("Unknown backend: " + backend + "\n" + USAGE);
+            return;
+        }
+
+        Scanner keyboard = new Scanner(System.in);
+        String menuInput = "";
+
+        while (!menuInput.equals("5")) {
+            String menu = "Choose an action from the menu:\r\n" + //
+                    "1. Load a knowledge base from a file\r\n" + //
+                    "2. Add a new statement to the knowledge base\r\n" + //
+                    "3. Search for an item in the knowledge base by term\r\n" + //
+                    "4. Search for a item in the knowledge base by term and sentence\r\n" + //
+                    "5. Quit\r\n\n" + //
+                    "Enter your choice: ";
+            System.out.print(menu);
+            if (!keyboard.hasNextLine()) {
+                break; // End of input
+            }
+            menuInput = keyboard.nextLine().trim();
+
+            if (menuInput.equals("1")) {
+                System.out.print("Enter file name: ");
+                String fileName = keyboard.nextLine();
+                loadKnowledgeBase(fileName);
+
+            } else if (menuInput.equals("2")) {
+                if (kb == null) {
+                    System.out.println("\nKnowledge base has not been loaded yet.\n");
+                    continue; // Skip adding the new element
+                }
+                System.out.print("Enter the term: ");
+                String term = keyboard.nextLine();
+                System.out.print("Enter the statement: ");
+                String statement = keyboard.nextLine();
+                System.out.print("Enter the confidence score: ");
+                String confidence = keyboard.nextLine().trim();
+                try {
+                    Float.parseFloat(confidence);
+                } catch (NumberFormatException e) {
+                    System.out.println("\nInvalid confidence score: " + confidence + "\n");
+                    continue; // Skip adding the new element
+                }
+                kb.add(term, statement, confidence); // Stored as typed, like the file's scores
+                System.out.println("\nStatement for term " + term + " has been updated.\n");
+
+            } else if (menuInput.equals("3")) {
+                if (kb == null) {
+                    System.out.println("\nKnowledge base has not been loaded yet.\n");
+                    continue; // Skip searching
+                }
+                System.out.print("Enter the term to search: ");
+                String term = keyboard.nextLine();
+                System.out.println("");
+                List<String> statements = kb.searchByTerm(term);
+                if (statements.isEmpty()) {
+                    System.out.println("Term '" + term + "' not found in the knowledge base.");
+                }
+                for (String statement : statements) {
+                    System.out.println(term + ": " + statement);
+                }
+                System.out.println("");
+
+            } else if (menuInput.equals("4")) {
+                if (kb == null) {
+                    System.out.println("\nKnowledge base has not been loaded yet.\n");
+                    continue; // Skip searching
+                }
+                System.out.print("Enter the term: ");
+                String term = keyboard.nextLine();
+                System.out.print("Enter the statement to search for: ");
+                String statement = keyboard.nextLine();
+                String confidence = kb.searchByTermAndStatement(term, statement);
+                if (confidence == null) {
+                    System.out.println("\nTerm and statement: '" + term + "' and '" + statement + "' not found.\n");
+                } else {
+                    System.out.println("\nStatement found: " + statement + " (Confidence score: " + confidence + ")\n");
+                }
+            }
+        }
+
+        keyboard.close();
+    }
+}
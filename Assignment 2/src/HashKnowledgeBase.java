@@ -0,0 +1,34 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in a hash table keyed by term. Lookups take
+ *         constant expected time, but the terms are kept in no order.
+ */
+public class HashKnowledgeBase implements KnowledgeBase {
+    private final HashMap<String, StatementList> terms = new HashMap<>();
+
+    @Override
+    public String name() {
+        return "hash";
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        terms.computeIfAbsent(term, t -> new StatementList()).put(statement, confidence);
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        StatementList statements = terms.get(term);
+        return statements != null ? statements.statements() : Collections.emptyList();
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        StatementList statements = terms.get(term);
+        return statements != null ? statements.confidenceOf(statement) : null;
+    }
+}
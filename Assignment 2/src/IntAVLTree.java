@@ -0,0 +1,266 @@
+import java.util.Arrays;
+
+/**
+ * @author Chris Scheepers
+ * An AVL tree with the same insert, search and rotation behaviour as AVLTree,
+ * whose nodes live in parallel primitive arrays instead of separate objects.
+ * A node is an index into the pool: its children are int indexes, its height
+ * is a byte, and its line and term are the entries at the same index of the
+ * string tables. Index 0 is a sentinel standing for "no node", with height 0.
+ * A descent reads a few densely packed arrays rather than chasing references
+ * to objects scattered across the heap, and each node costs 17 bytes of pool
+ * instead of a 32-byte object plus the reference to it.
+ */
+public class IntAVLTree {
+    private static final int NIL = 0;
+    /** Deeper than any AVL tree that fits in memory (height is below 1.45 log2 n). */
+    private static final int MAX_HEIGHT = 64;
+
+    private int[] left;
+    private int[] right;
+    private byte[] height;
+    private String[] data; // Whole line of each node
+    private String[] keys; // Term part of each line, extracted once at insert time
+    private int size = 0;
+    private int root = NIL;
+    private int searchOpCount = 0;
+    private int insertOpCount = 0;
+    // Reused by insert to record the path from the root, so no recursion is needed
+    private final int[] path = new int[MAX_HEIGHT];
+    private final boolean[] wentLeft = new boolean[MAX_HEIGHT];
+
+    /**
+     * Constructs an empty tree.
+     */
+    public IntAVLTree() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty tree with room for a number of nodes before the
+     * pool has to grow.
+     *
+     * @param capacity The expected number of nodes.
+     */
+    public IntAVLTree(int capacity) {
+        int length = Math.max(2, capacity + 1); // Plus the sentinel
+        left = new int[length];
+        right = new int[length];
+        height = new byte[length];
+        data = new String[length];
+        keys = new String[length];
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the height of the tree.
+     *
+     * @return The height, 0 for an empty tree.
+     */
+    public int height() {
+        return height[root];
+    }
+
+    /**
+     * Inserts a new data into the tree. Duplicate data is ignored.
+     *
+     * @param line The data to be inserted.
+     */
+    public void insert(String line) {
+        int depth = 0;
+        int node = root;
+        while (node != NIL) {
+            int cmp = line.compareTo(data[node]);
+            if (cmp == 0) {
+                return; // Duplicate data not allowed
+            }
+            insertOpCount++;
+            path[depth] = node;
+            wentLeft[depth] = cmp < 0;
+            depth++;
+            node = cmp < 0 ? left[node] : right[node];
+        }
+        insertOpCount++; // Increment insert operation count
+        int child = newNode(line);
+
+        for (int i = depth - 1; i >= 0; i--) {
+            node = path[i];
+            if (wentLeft[i]) {
+                left[node] = child;
+            } else {
+                right[node] = child;
+            }
+            child = rebalance(node, line);
+        }
+        root = child;
+    }
+
+    /**
+     * Takes the next free slot of the pool for a new leaf, growing the pool
+     * when it is full.
+     *
+     * @param line The data for the node.
+     * @return The index of the node.
+     */
+    private int newNode(String line) {
+        int node = ++size;
+        if (node == data.length) {
+            int capacity = data.length * 2;
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
+            data = Arrays.copyOf(data, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        int tab = line.indexOf('\t');
+        data[node] = line;
+        keys[node] = tab >= 0 ? line.substring(0, tab) : line;
+        height[node] = 1;
+        return node;
+    }
+
+    /**
+     * Updates the height of a node on an insertion path and rotates it if the
+     * insertion left it unbalanced.
+     *
+     * @param node The node to rebalance.
+     * @param line The data that was inserted below the node.
+     * @return The root of the rebalanced subtree.
+     */
+    private int rebalance(int node, String line) {
+        updateHeight(node);
+        int balance = height[left[node]] - height[right[node]];
+
+        // Left Left Case
+        if (balance > 1 && line.compareTo(data[left[node]]) < 0) {
+            return rightRotate(node);
+        }
+
+        // Right Right Case
+        if (balance < -1 && line.compareTo(data[right[node]]) > 0) {
+            return leftRotate(node);
+        }
+
+        // Left Right Case
+        if (balance > 1 && line.compareTo(data[left[node]]) > 0) {
+            left[node] = leftRotate(left[node]);
+            return rightRotate(node);
+        }
+
+        // Right Left Case
+        if (balance < -1 && line.compareTo(data[right[node]]) < 0) {
+            right[node] = rightRotate(right[node]);
+            return leftRotate(node);
+        }
+
+        return node;
+    }
+
+    /**
+     * Searches for a term and prints the matching statement.
+     *
+     * @param term The term to be searched.
+     * @return true if the term is found, false otherwise.
+     */
+    public boolean search(String term) {
+        int node = find(term);
+        if (node == NIL) {
+            return false;
+        }
+        String line = data[node];
+        int start = keys[node].length() + 1;
+        int end = start > line.length() ? -1 : line.indexOf('\t', start);
+        String statement = start > line.length() ? "" : line.substring(start, end >= 0 ? end : line.length());
+        System.out.println(keys[node] + ": " + statement);
+        return true;
+    }
+
+    /**
+     * Finds the node whose term matches, without printing or allocating.
+     *
+     * @param term The term to be searched.
+     * @return The index of the matching node, or 0 if the term is not in the
+     *         tree.
+     */
+    int find(String term) {
+        int node = root;
+        while (node != NIL) {
+            searchOpCount++; // Count each comparison on the way down
+            int cmp = term.compareTo(keys[node]);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? left[node] : right[node];
+        }
+        return NIL;
+    }
+
+    /**
+     * Returns the data held by a node.
+     *
+     * @param node The index of the node, as returned by find.
+     * @return The whole line.
+     */
+    String data(int node) {
+        return data[node];
+    }
+
+    /**
+     * Performs a right rotation on a node.
+     *
+     * @param y The node to perform the rotation on.
+     * @return The new root node after rotation.
+     */
+    private int rightRotate(int y) {
+        int x = left[y];
+        left[y] = right[x];
+        right[x] = y;
+        updateHeight(y);
+        updateHeight(x);
+        return x;
+    }
+
+    /**
+     * Performs a left rotation on a node.
+     *
+     * @param x The node to perform the rotation on.
+     * @return The new root node after rotation.
+     */
+    private int leftRotate(int x) {
+        int y = right[x];
+        right[x] = left[y];
+        left[y] = x;
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
+
+    private void updateHeight(int node) {
+        height[node] = (byte) (1 + Math.max(height[left[node]], height[right[node]]));
+    }
+
+    // Getters for operation counts
+    public int getSearchOpCount() {
+        return searchOpCount;
+    }
+
+    public int getInsertOpCount() {
+        return insertOpCount;
+    }
+
+    public void resetSearchOpCount() {
+        searchOpCount = 0;
+    }
+
+    public void resetInsertOpCount() {
+        insertOpCount = 0;
+    }
+}
@@ -0,0 +1,490 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * @author Chris Scheepers
+ *         Times loading, inserting, and searching for present and absent
+ *         terms in a line scan, a term-keyed unbalanced binary search tree,
+ *         the AVL tree (with object nodes and with array-backed nodes) and
+ *         the compact layout (with statements on and off the heap) at each of
+ *         the experiment's dataset sizes. Every benchmark is warmed up first,
+ *         then measured over several fixed-length iterations, and reports
+ *         throughput, average time per operation, bytes allocated per
+ *         operation and the garbage collections that ran while it was
+ *         measured. Results are printed and written to benchmark_results.csv.
+ */
+public class KbBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    /** Sizes beyond the dataset, built from copies of its lines with renamed terms. */
+    private static final int[] EXTENDED_SIZES = { 100000, 333333, 1000000, 3333333 };
+    private static final int INSERT_BATCH = 256;
+    private static final int SEARCH_BATCH = 64;
+    private static final String CSV_FILE = "benchmark_results.csv";
+
+    /** Receives results so the JIT cannot discard the work that made them. */
+    static volatile long sink;
+
+    /**
+     * One of the data structures under test.
+     */
+    interface Structure {
+        void load(String[] lines, int count);
+
+        void insert(String line);
+
+        boolean search(String term);
+    }
+
+    /**
+     * Lines in an array searched front to back for an exact term, as the
+     * array backend searches. Assignment 1's array app matches whole words
+     * through its word index instead, and is not measured here.
+     */
+    static class ArrayScan implements Structure {
+        private String[] lines = new String[0];
+        private int size;
+
+        public void load(String[] source, int count) {
+            lines = Arrays.copyOf(source, Math.max(count, 16));
+            size = count;
+        }
+
+        public void insert(String line) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+
+        public boolean search(String term) {
+            for (int i = 0; i < size; i++) {
+                String line = lines[i];
+                if (line.startsWith(term) && line.length() > term.length() && line.charAt(term.length()) == '\t') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The unbalanced binary search tree keyed by term behind the bst
+     * backend. Assignment 1's tree of whole lines is built separately and is
+     * not measured here.
+     */
+    static class Bst implements Structure {
+        private BSTKnowledgeBase kb = new BSTKnowledgeBase();
+
+        public void load(String[] lines, int count) {
+            kb = new BSTKnowledgeBase();
+            for (int i = 0; i < count; i++) {
+                insert(lines[i]);
+            }
+        }
+
+        public void insert(String line) {
+            int tab1 = line.indexOf('\t');
+            int tab2 = line.indexOf('\t', tab1 + 1);
+            kb.add(line.substring(0, tab1), line.substring(tab1 + 1, tab2), line.substring(tab2 + 1));
+        }
+
+        public boolean search(String term) {
+            return !kb.searchByTerm(term).isEmpty();
+        }
+    }
+
+    /**
+     * The AVL tree of whole lines used by the AVL experiment.
+     */
+    static class Avl implements Structure {
+        private AVLTree tree = new AVLTree();
+
+        public void load(String[] lines, int count) {
+            tree = new AVLTree();
+            for (int i = 0; i < count; i++) {
+                tree.insert(lines[i]);
+            }
+        }
+
+        public void insert(String line) {
+            tree.insert(line);
+        }
+
+        public boolean search(String term) {
+            return tree.find(term) != null;
+        }
+    }
+
+    /**
+     * The same AVL tree of whole lines, with its nodes in parallel primitive
+     * arrays.
+     */
+    static class IntAvl implements Structure {
+        private IntAVLTree tree = new IntAVLTree();
+
+        public void load(String[] lines, int count) {
+            tree = new IntAVLTree(count);
+            for (int i = 0; i < count; i++) {
+                tree.insert(lines[i]);
+            }
+        }
+
+        public void insert(String line) {
+            tree.insert(line);
+        }
+
+        public boolean search(String term) {
+            return tree.find(term) != 0;
+        }
+    }
+
+    /**
+     * The compact layout, built from an indexed file of the lines. The file
+     * for each size is written once and reused, so loading times only the
+     * build from the indexed file, as the apps do after opening it.
+     */
+    static class Compact implements Structure {
+        private static String[] fileLines;
+        private static int fileCount = -1;
+        private static KbFile file;
+
+        private final boolean offHeap;
+        private CompactKnowledgeBase kb;
+
+        Compact(boolean offHeap) {
+            this.offHeap = offHeap;
+            kb = new CompactKnowledgeBase(offHeap);
+        }
+
+        public void load(String[] lines, int count) {
+            kb = new CompactKnowledgeBase(offHeap);
+            kb.load(indexed(lines, count));
+        }
+
+        public void insert(String line) {
+            int tab1 = line.indexOf('\t');
+            int tab2 = line.indexOf('\t', tab1 + 1);
+            kb.add(line.substring(0, tab1), line.substring(tab1 + 1, tab2), line.substring(tab2 + 1));
+        }
+
+        public boolean search(String term) {
+            return !kb.searchByTerm(term).isEmpty();
+        }
+
+        /** Returns the first lines as an indexed file, writing it if needed. */
+        private static KbFile indexed(String[] lines, int count) {
+            if (lines != fileLines || count != fileCount) {
+                try {
+                    Path path = Files.createTempFile("kb-benchmark", ".txt");
+                    path.toFile().deleteOnExit();
+                    Files.write(path, Arrays.asList(lines).subList(0, count), StandardCharsets.UTF_8);
+                    file = KbFile.open(path.toString());
+                    fileLines = lines;
+                    fileCount = count;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return file;
+        }
+    }
+
+    /**
+     * The work of one benchmark: untimed preparation, then a timed call that
+     * reports how many operations it performed.
+     */
+    interface Workload {
+        void setUp();
+
+        int run();
+    }
+
+    /**
+     * The measurements of one benchmark.
+     */
+    static class Result {
+        final String structure;
+        final String operation;
+        final int size;
+        double opsPerSecond;
+        double opsPerSecondError; // Standard deviation across iterations
+        double nanosPerOp;
+        double bytesPerOp;
+        long gcCount;
+        long gcMillis;
+
+        Result(String structure, String operation, int size) {
+            this.structure = structure;
+            this.operation = operation;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Runs every benchmark.
+     *
+     * @param args The largest dataset size to run (default 50000, up to
+     *             3333333), then optionally the structures to run out of
+     *             scan, termbst, avl, intavl, compact and offheap.
+     */
+    public static void main(String[] args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        List<String> names = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList("scan", "termbst", "avl", "intavl", "compact", "offheap");
+
+        List<String> dataset = new ArrayList<>();
+        try {
+            KbFile file = KbFile.open("GenericsKB.txt");
+            for (int i = 0; i < file.size(); i++) {
+                if (file.isWellFormed(i)) {
+                    dataset.add(file.term(i) + "\t" + file.statement(i) + "\t" + file.confidence(i));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("\nError reading the file: " + e.getMessage() + "\n");
+            return;
+        }
+
+        int[] sizes = sizesUpTo(maxSize);
+        Random random = new Random(42);
+        String[] lines = extend(dataset, sizes[sizes.length - 1], random);
+        String[] fresh = renamed(lines, INSERT_BATCH, " (new)", random);
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-8s %-7s %9s %14s %12s %14s %12s %10s%n", "Struct", "Op", "Size", "ops/s", "+-",
+                "ns/op", "B/op", "GC ms");
+        for (int size : sizes) {
+            String[] hits = new String[SEARCH_BATCH];
+            String[] misses = new String[SEARCH_BATCH];
+            for (int i = 0; i < SEARCH_BATCH; i++) {
+                String line = lines[random.nextInt(size)];
+                hits[i] = line.substring(0, line.indexOf('\t'));
+                misses[i] = hits[i] + " (missing)";
+            }
+            for (String name : names) {
+                Supplier<Structure> factory = factory(name);
+                if (factory == null) {
+                    System.out.println("Unknown structure: " + name);
+                    return;
+                }
+                results.add(measure(name, "load", size, loadWorkload(factory, lines, size)));
+                results.add(measure(name, "insert", size, insertWorkload(factory, lines, size, fresh)));
+                Structure loaded = factory.get();
+                loaded.load(lines, size);
+                results.add(measure(name, "hit", size, searchWorkload(loaded, hits)));
+                results.add(measure(name, "miss", size, searchWorkload(loaded, misses)));
+            }
+        }
+
+        try (FileWriter writer = new FileWriter(CSV_FILE)) {
+            writer.write("Structure,Operation,Size,Ops per s,Ops per s error,Ns per op,Bytes per op,GC count,GC ms\n");
+            for (Result r : results) {
+                writer.write(String.format("%s,%s,%d,%.1f,%.1f,%.1f,%.1f,%d,%d%n", r.structure, r.operation, r.size,
+                        r.opsPerSecond, r.opsPerSecondError, r.nanosPerOp, r.bytesPerOp, r.gcCount, r.gcMillis));
+            }
+            System.out.println("Benchmark completed. Results written to " + CSV_FILE + ".");
+        } catch (IOException e) {
+            System.out.println("\nError writing results: " + e.getMessage() + "\n");
+        }
+    }
+
+    private static Supplier<Structure> factory(String name) {
+        switch (name) {
+            case "scan":
+                return ArrayScan::new;
+            case "termbst":
+                return Bst::new;
+            case "avl":
+                return Avl::new;
+            case "intavl":
+                return IntAvl::new;
+            case "compact":
+                return () -> new Compact(false);
+            case "offheap":
+                return () -> new Compact(true);
+            default:
+                return null;
+        }
+    }
+
+    private static Workload loadWorkload(Supplier<Structure> factory, String[] lines, int size) {
+        return new Workload() {
+            public void setUp() {
+            }
+
+            public int run() {
+                Structure structure = factory.get();
+                structure.load(lines, size);
+                sink += structure.search(lines[0].substring(0, lines[0].indexOf('\t'))) ? 1 : 0;
+                return 1;
+            }
+        };
+    }
+
+    private static Workload insertWorkload(Supplier<Structure> factory, String[] lines, int size, String[] fresh) {
+        return new Workload() {
+            Structure structure;
+
+            public void setUp() {
+                structure = factory.get(); // A fresh structure of the full size for every batch
+                structure.load(lines, size);
+            }
+
+            public int run() {
+                for (String line : fresh) {
+                    structure.insert(line);
+                }
+                return fresh.length;
+            }
+        };
+    }
+
+    private static Workload searchWorkload(Structure structure, String[] terms) {
+        return new Workload() {
+            public void setUp() {
+            }
+
+            public int run() {
+                int found = 0;
+                for (String term : terms) {
+                    found += structure.search(term) ? 1 : 0;
+                }
+                sink += found;
+                return terms.length;
+            }
+        };
+    }
+
+    /**
+     * Warms a workload up, then measures it over fixed-length iterations.
+     * Only the run calls are timed, and only the allocation and collections
+     * that happen during them are counted.
+     */
+    private static Result measure(String structure, String operation, int size, Workload workload) {
+        Result result = new Result(structure, operation, size);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads
+                : null;
+        long thread = Thread.currentThread().getId();
+        double[] rates = new double[MEASUREMENT_ITERATIONS];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+            boolean measured = iteration >= WARMUP_ITERATIONS;
+            long ops = 0;
+            long nanos = 0;
+            long start = System.nanoTime();
+            do {
+                workload.setUp();
+                long gcCountBefore = measured ? gcCount() : 0;
+                long gcMillisBefore = measured ? gcMillis() : 0;
+                long bytesBefore = allocation != null ? allocation.getThreadAllocatedBytes(thread) : 0;
+                long t0 = System.nanoTime();
+                ops += workload.run();
+                nanos += System.nanoTime() - t0;
+                long bytesAfter = allocation != null ? allocation.getThreadAllocatedBytes(thread) : 0;
+                if (measured) {
+                    totalBytes += bytesAfter - bytesBefore;
+                    result.gcCount += gcCount() - gcCountBefore;
+                    result.gcMillis += gcMillis() - gcMillisBefore;
+                }
+            } while (System.nanoTime() - start < ITERATION_NANOS);
+            if (measured) {
+                rates[iteration - WARMUP_ITERATIONS] = ops * 1e9 / nanos;
+                totalOps += ops;
+                totalNanos += nanos;
+            }
+        }
+
+        double mean = Arrays.stream(rates).average().orElse(0);
+        double variance = Arrays.stream(rates).map(r -> (r - mean) * (r - mean)).sum() / Math.max(1, rates.length - 1);
+        result.opsPerSecond = mean;
+        result.opsPerSecondError = Math.sqrt(variance);
+        result.nanosPerOp = (double) totalNanos / totalOps;
+        result.bytesPerOp = allocation != null ? (double) totalBytes / totalOps : Double.NaN;
+        System.out.printf("%-8s %-7s %9d %14.1f %12.1f %14.1f %12.1f %10d%n", structure, operation, size,
+                result.opsPerSecond, result.opsPerSecondError, result.nanosPerOp, result.bytesPerOp, result.gcMillis);
+        return result;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the experiment's dataset sizes, then the extended sizes, up to a
+     * limit.
+     */
+    private static int[] sizesUpTo(int maxSize) {
+        List<Integer> sizes = new ArrayList<>();
+        for (int size : AVLExperiment.datasetSizes) {
+            if (size <= maxSize) {
+                sizes.add(size);
+            }
+        }
+        for (int size : EXTENDED_SIZES) {
+            if (size <= maxSize) {
+                sizes.add(size);
+            }
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Extends the dataset with numbered copies of its lines if it is too
+     * small, then shuffles it.
+     */
+    private static String[] extend(List<String> dataset, int size, Random random) {
+        String[] lines = AVLExperiment.extend(dataset.toArray(new String[0]), size);
+        for (int i = lines.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = lines[i];
+            lines[i] = lines[j];
+            lines[j] = t;
+        }
+        return lines;
+    }
+
+    /**
+     * Picks random lines and appends a suffix to their terms, giving lines
+     * that are spread over the key space but absent from the structures.
+     */
+    private static String[] renamed(String[] lines, int count, String suffix, Random random) {
+        String[] renamed = new String[count];
+        for (int i = 0; i < count; i++) {
+            String line = lines[random.nextInt(lines.length)];
+            int tab = line.indexOf('\t');
+            renamed[i] = line.substring(0, tab) + suffix + " " + i + line.substring(tab);
+        }
+        return renamed;
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Chris Scheepers
+ *         Reads and writes a parsed knowledge base as a versioned binary
+ *         snapshot, so a TermAVLTree can be restored without re-parsing the
+ *         text file.
+ *
+ *         <p>
+ *         Layout, all integers big-endian:
+ *         <pre>
+ *         int    magic "GKBS"
+ *         int    version
+ *         long   size of the source text file
+ *         long   last-modified time of the source text file
+ *         int    term count (t), int statement count (s)
+ *         long[t+1] term offsets into the term blob
+ *         int[t+1]  index of each term's first statement
+ *         long[s+1] statement offsets into the statement blob
+ *         float[s]  confidence scores
+ *         the UTF-8 term blob, then the UTF-8 statement blob
+ *         </pre>
+ *         Terms are stored in sorted order, which is also the in-order layout
+ *         of the balanced tree that is rebuilt on load. Offsets are longs, so
+ *         a snapshot may be larger than 2 GiB. The blobs are streamed to and
+ *         from the file through a fixed buffer rather than held in memory.
+ */
+public class KbSnapshot {
+    private static final int MAGIC = 0x474B4253; // "GKBS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Returns the snapshot file name used for a knowledge base file.
+     *
+     * @param fileName The name of the knowledge base text file.
+     * @return The name of its snapshot file.
+     */
+    public static String snapshotFileName(String fileName) {
+        return fileName + ".snap";
+    }
+
+    /**
+     * Writes a tree to a snapshot file. The file is written under a temporary
+     * name and moved into place, so a crash never leaves a partial snapshot.
+     * The blobs are written first, straight to the file, and the offset tables
+     * they fill in are written into the space left for them afterwards.
+     *
+     * @param tree         The tree to save.
+     * @param snapshotFile The snapshot file to write.
+     * @param sourceFile   The text file the tree was loaded from.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void write(TermAVLTree tree, String snapshotFile, String sourceFile) throws IOException {
+        TermAVLNode[] nodes = tree.nodesInOrder();
+        long statementTotal = 0;
+        for (TermAVLNode node : nodes) {
+            statementTotal += node.count;
+        }
+        if (statementTotal >= Integer.MAX_VALUE) {
+            throw new IOException("Too many statements for a snapshot: " + statementTotal);
+        }
+        int statementCount = (int) statementTotal;
+
+        long[] termOffsets = new long[nodes.length + 1];
+        int[] firstStatement = new int[nodes.length + 1];
+        long[] statementOffsets = new long[statementCount + 1];
+        float[] confidences = new float[statementCount];
+
+        Path source = Path.of(sourceFile);
+        Path target = Path.of(snapshotFile);
+        Path temp = Path.of(snapshotFile + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long tablesBytes = (long) (nodes.length + 1) * (Long.BYTES + Integer.BYTES)
+                    + (long) (statementCount + 1) * Long.BYTES + (long) statementCount * Float.BYTES;
+            Output out = new Output(channel, HEADER_BYTES + tablesBytes);
+
+            long start = out.position();
+            for (int t = 0; t < nodes.length; t++) {
+                termOffsets[t] = out.position() - start;
+                out.putBytes(nodes[t].term.getBytes(StandardCharsets.UTF_8));
+            }
+            termOffsets[nodes.length] = out.position() - start;
+
+            start = out.position();
+            int s = 0;
+            for (int t = 0; t < nodes.length; t++) {
+                firstStatement[t] = s;
+                for (int i = 0; i < nodes[t].count; i++, s++) {
+                    statementOffsets[s] = out.position() - start;
+                    confidences[s] = nodes[t].confidences[i];
+                    out.putBytes(nodes[t].statements[i].getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            firstStatement[nodes.length] = s;
+            statementOffsets[statementCount] = out.position() - start;
+            out.flush();
+
+            out = new Output(channel, 0);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(Files.size(source));
+            out.putLong(Files.getLastModifiedTime(source).toMillis());
+            out.putInt(nodes.length);
+            out.putInt(statementCount);
+            for (long offset : termOffsets) {
+                out.putLong(offset);
+            }
+            for (int first : firstStatement) {
+                out.putInt(first);
+            }
+            for (long offset : statementOffsets) {
+                out.putLong(offset);
+            }
+            for (float confidence : confidences) {
+                out.putFloat(confidence);
+            }
+            out.flush();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a tree from a snapshot file, if the snapshot is valid and still
+     * matches its source text file.
+     *
+     * @param snapshotFile The snapshot file to read.
+     * @param sourceFile   The text file the snapshot must match.
+     * @return The restored tree, or null if there is no usable snapshot.
+     * @throws IOException If the snapshot exists but cannot be read.
+     */
+    public static TermAVLTree load(String snapshotFile, String sourceFile) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Path.of(snapshotFile), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try (channel) {
+            Input in = new Input(channel);
+            Path source = Path.of(sourceFile);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            if (in.getLong() != Files.size(source) || in.getLong() != Files.getLastModifiedTime(source).toMillis()) {
+                return null; // The text file has changed since the snapshot was taken
+            }
+            int termCount = in.getInt();
+            int statementCount = in.getInt();
+            long tablesBytes = (long) (termCount + 1) * (Long.BYTES + Integer.BYTES)
+                    + (long) (statementCount + 1) * Long.BYTES + (long) statementCount * Float.BYTES;
+            if (termCount < 0 || statementCount < 0 || HEADER_BYTES + tablesBytes > channel.size()) {
+                return null; // Counts that the file is too short to hold
+            }
+            long[] termOffsets = new long[termCount + 1];
+            int[] firstStatement = new int[termCount + 1];
+            long[] statementOffsets = new long[statementCount + 1];
+            float[] confidences = new float[statementCount];
+            for (int t = 0; t <= termCount; t++) {
+                termOffsets[t] = in.getLong();
+            }
+            for (int t = 0; t <= termCount; t++) {
+                firstStatement[t] = in.getInt();
+            }
+            for (int i = 0; i <= statementCount; i++) {
+                statementOffsets[i] = in.getLong();
+            }
+            for (int i = 0; i < statementCount; i++) {
+                confidences[i] = in.getFloat();
+            }
+
+            // Both blobs are read front to back, in the order they were written
+            String[] terms = new String[termCount];
+            for (int t = 0; t < termCount; t++) {
+                terms[t] = in.getString(length(termOffsets, t));
+            }
+            TermAVLNode[] nodes = new TermAVLNode[termCount];
+            for (int t = 0; t < termCount; t++) {
+                int from = firstStatement[t];
+                int to = firstStatement[t + 1];
+                String[] statements = new String[to - from];
+                float[] scores = new float[to - from];
+                for (int i = from; i < to; i++) {
+                    statements[i - from] = in.getString(length(statementOffsets, i));
+                    scores[i - from] = confidences[i];
+                }
+                nodes[t] = new TermAVLNode(terms[t], statements, scores);
+            }
+            return TermAVLTree.fromSorted(nodes, termCount);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            return null; // Truncated or corrupt snapshot
+        }
+    }
+
+    /**
+     * Returns the length of one string in a blob from its offsets.
+     */
+    private static int length(long[] offsets, int index) {
+        long length = offsets[index + 1] - offsets[index];
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad blob offsets");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Writes values through a fixed buffer to a file channel, from a given
+     * position onwards.
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private long position; // File position of the start of the buffer
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        long position() {
+            return position + buffer.position();
+        }
+
+        void putInt(int value) throws IOException {
+            room(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            room(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            room(Float.BYTES);
+            buffer.putFloat(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining()) {
+                    position += channel.write(large, position);
+                }
+                return;
+            }
+            room(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads values through a fixed buffer from a file channel, front to back.
+     * Running off the end of the file throws BufferUnderflowException.
+     */
+    private static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        int getInt() throws IOException {
+            fill(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            fill(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        float getFloat() throws IOException {
+            fill(Float.BYTES);
+            return buffer.getFloat();
+        }
+
+        String getString(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int done = Math.min(length, buffer.remaining());
+            buffer.get(bytes, 0, done);
+            if (done < length) {
+                ByteBuffer rest = ByteBuffer.wrap(bytes, done, length - done);
+                while (rest.hasRemaining()) {
+                    if (channel.read(rest) < 0) {
+                        throw new BufferUnderflowException();
+                    }
+                }
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Makes sure at least a number of bytes are buffered. */
+        private void fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new BufferUnderflowException();
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
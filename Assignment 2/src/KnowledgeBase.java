@@ -0,0 +1,99 @@
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A store of statements about terms, each with a confidence score.
+ *         The apps work through this interface so the data structure behind
+ *         it can be chosen to suit the workload.
+ *
+ *         <p>
+ *         Every backend follows the same rules. Terms match exactly, case
+ *         included; a search never matches part of a term. A term holds each
+ *         statement once: adding a statement it already has replaces the
+ *         confidence score and keeps the statement's place, so statements
+ *         are listed in the order they were first added. Loading a file gives
+ *         the same result as adding its well-formed lines in file order.
+ *         Confidence scores are kept as written, so a score is printed as it
+ *         appeared in the file and one that is not a number is still kept.
+ */
+public interface KnowledgeBase {
+
+    /**
+     * Returns the name of the data structure, as given on the command line.
+     *
+     * @return The backend name.
+     */
+    String name();
+
+    /**
+     * Adds every well-formed line of a knowledge base file.
+     *
+     * @param file The indexed file to load.
+     */
+    default void load(KbFile file) {
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                add(file.term(i), file.statement(i), file.confidence(i));
+            }
+        }
+    }
+
+    /**
+     * Adds a statement about a term, or updates its confidence score if the
+     * term already has that statement.
+     *
+     * @param term       The term.
+     * @param statement  The statement.
+     * @param confidence The confidence score of the statement, as written.
+     */
+    void add(String term, String statement, String confidence);
+
+    /**
+     * Returns every statement about a term.
+     *
+     * @param term The term to search for.
+     * @return The statements, in the order they were added; empty if the
+     *         term is absent.
+     */
+    List<String> searchByTerm(String term);
+
+    /**
+     * Looks up the confidence score of a statement about a term.
+     *
+     * @param term      The term.
+     * @param statement The statement.
+     * @return The confidence score as written, or null if the term has no
+     *         such statement.
+     */
+    String searchByTermAndStatement(String term, String statement);
+
+    /**
+     * Creates an empty knowledge base backed by the named data structure.
+     *
+     * @param name One of array, bst, avl, hash, sorted, skiplist, compact or
+     *             offheap.
+     * @return The knowledge base, or null if the name is unknown.
+     */
+    static KnowledgeBase create(String name) {
+        switch (name) {
+            case "array":
+                return new ArrayKnowledgeBase();
+            case "bst":
+                return new BSTKnowledgeBase();
+            case "avl":
+                return new AVLKnowledgeBase();
+            case "hash":
+                return new HashKnowledgeBase();
+            case "sorted":
+                return new SortedArrayKnowledgeBase();
+            case "skiplist":
+                return new SkipListKnowledgeBase();
+            case "compact":
+                return new CompactKnowledgeBase(false);
+            case "offheap":
+                return new CompactKnowledgeBase(true);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * @author Chris Scheepers
+ *         A histogram of latencies in nanoseconds. Each power of two is split
+ *         into 16 buckets, so any recorded value is reported to within about
+ *         6% while the whole range of a long fits in 1024 counters. Values
+ *         below 32 are counted exactly.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** Number of buckets, enough for any non-negative long. */
+    static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new long[BUCKETS];
+    }
+
+    /**
+     * Constructs a histogram from bucket counts gathered elsewhere.
+     *
+     * @param counts The count of each bucket, as numbered by bucketOf. The
+     *               array is copied.
+     * @param sum    The sum of the recorded latencies.
+     * @param max    The largest recorded latency.
+     */
+    LatencyHistogram(long[] counts, long sum, long max) {
+        this.counts = counts.clone();
+        for (long c : counts) {
+            count += c;
+        }
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds every latency recorded by another histogram to this one.
+     *
+     * @param other The histogram to add.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest latency recorded.
+     *
+     * @return The maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the latency that a given fraction of the recorded latencies do
+     * not exceed.
+     *
+     * @param fraction The fraction, between 0 and 1; 0.99 gives the 99th
+     *                 percentile.
+     * @return The upper bound of the bucket holding that latency, in
+     *         nanoseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket a latency is counted in.
+     *
+     * @param value The latency in nanoseconds, at least 0.
+     * @return The bucket number, below BUCKETS.
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // At least SUB_BITS + 1
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+}
@@ -0,0 +1,385 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @author Chris Scheepers
+ *         Loads a knowledge base file into a TermAVLTree in three overlapping
+ *         stages: a reader thread cuts the file into batches of lines, parser
+ *         threads split the lines into fields, and a single writer thread
+ *         inserts the parsed batches into the tree in file order. The stages
+ *         are joined by bounded queues, so a slow stage holds back the ones
+ *         before it instead of letting batches pile up in memory. The file is
+ *         streamed, so it may be larger than can be mapped.
+ *
+ *         <p>
+ *         Queries may run while loading is in progress. Each batch is
+ *         inserted under a write lock and queries take a read lock, so a
+ *         query sees the tree after some whole number of batches.
+ */
+public class PipelinedLoader {
+    /** Lines read, parsed and inserted together. */
+    private static final int BATCH_SIZE = 4096;
+    /** Malformed lines described individually; the rest are only counted. */
+    private static final int WARNING_LIMIT = 10;
+
+    private final TermAVLTree tree;
+    private final int parsers;
+    private final BlockingQueue<LineBatch> lines;
+    private final BlockingQueue<ParsedBatch> parsed;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Throwable failure;
+    private volatile long linesLoaded = 0;
+    private volatile long malformedLines = 0;
+    private final List<String> warnings = new ArrayList<>(); // Only the writer adds to it
+    private volatile boolean done = false;
+
+    /**
+     * A batch of raw lines, numbered in file order.
+     */
+    private static class LineBatch {
+        final long seq;
+        final String[] lines;
+        final int count;
+
+        LineBatch(long seq, String[] lines, int count) {
+            this.seq = seq;
+            this.lines = lines;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The well-formed lines of a batch, split into fields, and a description
+     * of each malformed line.
+     */
+    private static class ParsedBatch {
+        final long seq;
+        final String[] terms;
+        final String[] statements;
+        final float[] confidences;
+        final int count;
+        final List<String> malformed;
+
+        ParsedBatch(long seq, String[] terms, String[] statements, float[] confidences, int count,
+                List<String> malformed) {
+            this.seq = seq;
+            this.terms = terms;
+            this.statements = statements;
+            this.confidences = confidences;
+            this.count = count;
+            this.malformed = malformed;
+        }
+    }
+
+    // Sent down each queue when a stage has nothing more to send
+    private static final LineBatch END_OF_LINES = new LineBatch(-1, new String[0], 0);
+    private static final ParsedBatch END_OF_PARSED = new ParsedBatch(-1, null, null, null, 0, null);
+
+    /**
+     * Constructs a loader that adds to a tree.
+     *
+     * @param tree    The tree to load into. It must not be used directly until
+     *                loading has finished.
+     * @param parsers The number of parser threads.
+     */
+    public PipelinedLoader(TermAVLTree tree, int parsers) {
+        this.tree = tree;
+        this.parsers = Math.max(1, parsers);
+        lines = new ArrayBlockingQueue<>(this.parsers * 2);
+        parsed = new ArrayBlockingQueue<>(this.parsers * 2);
+    }
+
+    /**
+     * Starts loading a file in the background.
+     *
+     * @param fileName The name of the knowledge base file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public void start(String fileName) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(Path.of(fileName)), StandardCharsets.UTF_8), 1 << 16);
+        threads.add(new Thread(() -> readLines(reader), "loader-reader"));
+        for (int i = 0; i < parsers; i++) {
+            threads.add(new Thread(this::parseLines, "loader-parser-" + i));
+        }
+        threads.add(new Thread(this::insertBatches, "loader-writer"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Waits for loading to finish.
+     *
+     * @return The loaded tree.
+     * @throws IOException If the file could not be read or loading failed.
+     */
+    public TermAVLTree await() throws IOException {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("Loading failed", failure);
+        }
+        return tree;
+    }
+
+    /**
+     * Checks whether every stage has finished.
+     *
+     * @return true once loading has finished or failed.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns the number of lines inserted so far.
+     *
+     * @return The number of lines in the tree.
+     */
+    public long getLinesLoaded() {
+        return linesLoaded;
+    }
+
+    /**
+     * Returns the number of lines skipped so far because they did not have
+     * exactly three tab-separated fields or had no confidence score.
+     *
+     * @return The number of malformed lines.
+     */
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    /**
+     * Describes the lines skipped because they were malformed, with their
+     * line numbers, in the same words as KbFile. Only complete once loading
+     * has finished.
+     *
+     * @return One message per line for the first few lines, plus a count of
+     *         the rest; empty if every line was well formed.
+     */
+    public List<String> malformedWarnings() {
+        List<String> described = new ArrayList<>(warnings);
+        if (malformedLines > described.size()) {
+            described.add((malformedLines - described.size()) + " more malformed lines.");
+        }
+        return described;
+    }
+
+    /**
+     * Returns every statement about a term in the tree as loaded so far.
+     *
+     * @param term The term to search for.
+     * @return A copy of the statements; empty if the term is absent.
+     */
+    public List<String> statements(String term) {
+        lock.readLock().lock();
+        try {
+            TermAVLNode node = tree.get(term);
+            List<String> found = new ArrayList<>();
+            for (int i = 0; node != null && i < node.statementCount(); i++) {
+                found.add(node.getStatement(i));
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the tree as loaded so far and prints every statement about a
+     * term.
+     *
+     * @param term The term to be searched.
+     * @return true if the term is found, false otherwise.
+     */
+    public boolean search(String term) {
+        List<String> found = statements(term);
+        for (String statement : found) {
+            System.out.println(term + ": " + statement);
+        }
+        return !found.isEmpty();
+    }
+
+    /**
+     * Reader stage: cuts the file into numbered batches of lines.
+     */
+    private void readLines(BufferedReader reader) {
+        long seq = 0;
+        try (reader) {
+            String[] batch = new String[BATCH_SIZE];
+            int count = 0;
+            String line;
+            while (failure == null && (line = reader.readLine()) != null) {
+                batch[count++] = line;
+                if (count == BATCH_SIZE) {
+                    lines.put(new LineBatch(seq++, batch, count));
+                    batch = new String[BATCH_SIZE];
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                lines.put(new LineBatch(seq, batch, count));
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(e);
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < parsers; i++) {
+                putQuietly(lines, END_OF_LINES);
+            }
+        }
+    }
+
+    /**
+     * Parser stage: keeps the lines that have exactly a term, a statement and
+     * a confidence score, split into their fields, by the same rule as
+     * KbFile. A parser only stops at the end of the lines, so the reader can
+     * never be left blocked on a full queue.
+     */
+    private void parseLines() {
+        try {
+            LineBatch batch;
+            while ((batch = lines.take()) != END_OF_LINES) {
+                if (failure != null) {
+                    continue; // Drain without parsing
+                }
+                String[] terms = new String[batch.count];
+                String[] statements = new String[batch.count];
+                float[] confidences = new float[batch.count];
+                int count = 0;
+                List<String> malformed = new ArrayList<>(0);
+                for (int i = 0; i < batch.count; i++) {
+                    String line = batch.lines[i];
+                    int tab1 = line.indexOf('\t');
+                    int tab2 = tab1 < 0 ? -1 : line.indexOf('\t', tab1 + 1);
+                    int tab3 = tab2 < 0 ? -1 : line.indexOf('\t', tab2 + 1);
+                    String problem = tab2 < 0 ? "fewer than three tab-separated fields"
+                            : tab3 >= 0 ? "more than three tab-separated fields"
+                            : tab2 + 1 >= line.length() ? "no confidence score" : null;
+                    if (problem != null) {
+                        malformed.add("Line " + (batch.seq * BATCH_SIZE + i + 1) + " has " + problem + ".");
+                        continue;
+                    }
+                    terms[count] = line.substring(0, tab1);
+                    statements[count] = line.substring(tab1 + 1, tab2);
+                    confidences[count] = parseConfidence(line.substring(tab2 + 1));
+                    count++;
+                }
+                parsed.put(new ParsedBatch(batch.seq, terms, statements, confidences, count, malformed));
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+            Thread.currentThread().interrupt();
+        } finally {
+            putQuietly(parsed, END_OF_PARSED);
+        }
+    }
+
+    /**
+     * Writer stage: inserts parsed batches into the tree in file order,
+     * holding back any that arrive early. After a failure it keeps taking
+     * batches, without inserting them, so the other stages can finish.
+     */
+    private void insertBatches() {
+        Map<Long, ParsedBatch> early = new HashMap<>();
+        long next = 0;
+        int finishedParsers = 0;
+        try {
+            while (finishedParsers < parsers) {
+                ParsedBatch batch = parsed.take();
+                if (batch == END_OF_PARSED) {
+                    finishedParsers++;
+                    continue;
+                }
+                early.put(batch.seq, batch);
+                while (failure == null && (batch = early.remove(next)) != null) {
+                    try {
+                        insert(batch);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                    next++;
+                }
+                if (failure != null) {
+                    early.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+            Thread.currentThread().interrupt();
+        } finally {
+            done = true;
+        }
+    }
+
+    private void insert(ParsedBatch batch) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.count; i++) {
+                tree.insert(batch.terms[i], batch.statements[i], batch.confidences[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        linesLoaded += batch.count; // Only the writer thread updates these
+        malformedLines += batch.malformed.size();
+        for (int i = 0; i < batch.malformed.size() && warnings.size() < WARNING_LIMIT; i++) {
+            warnings.add(batch.malformed.get(i));
+        }
+    }
+
+    private static float parseConfidence(String text) {
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /** Puts an end marker even if the thread has been interrupted. */
+    private static <T> void putQuietly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in a concurrent skip list keyed by term. The skip
+ *         list is lock-free, so several threads can add statements while
+ *         others search, and a file is loaded by splitting its lines into
+ *         chunks that are inserted in parallel.
+ */
+public class SkipListKnowledgeBase implements KnowledgeBase {
+    /** Lines inserted by one loader task. */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final ConcurrentSkipListMap<String, StatementList> terms = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final int threads;
+
+    /**
+     * Constructs an empty knowledge base that loads with one thread per
+     * available processor.
+     */
+    public SkipListKnowledgeBase() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty knowledge base.
+     *
+     * @param threads The number of threads used to load a file.
+     */
+    public SkipListKnowledgeBase(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public String name() {
+        return "skiplist";
+    }
+
+    /**
+     * Adds every well-formed line of a file, inserting chunks of lines from
+     * several threads. Statements about a term keep their file order, and a
+     * repeated statement keeps the score of its last copy, whichever chunk
+     * finishes first.
+     *
+     * @param file The indexed file to load.
+     */
+    @Override
+    public void load(KbFile file) {
+        long base = nextSequence.getAndAdd(file.size()); // One sequence number per line
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int start = 0; start < file.size(); start += CHUNK_SIZE) {
+                int from = start;
+                int to = Math.min(start + CHUNK_SIZE, file.size());
+                chunks.add(pool.submit(() -> loadChunk(file, base, from, to)));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Loading failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void loadChunk(KbFile file, long base, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (file.isWellFormed(i)) {
+                put(base + i, file.term(i), file.statement(i), file.confidence(i));
+            }
+        }
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        put(nextSequence.getAndIncrement(), term, statement, confidence);
+    }
+
+    private void put(long seq, String term, String statement, String confidence) {
+        StatementList statements = terms.computeIfAbsent(term, t -> new StatementList());
+        // Each list is its own lock, so threads only wait for each other on the same term
+        synchronized (statements) {
+            statements.put(seq, statement, confidence);
+        }
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        StatementList statements = terms.get(term);
+        if (statements == null) {
+            return Collections.emptyList();
+        }
+        synchronized (statements) {
+            return statements.statements();
+        }
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        StatementList statements = terms.get(term);
+        if (statements == null) {
+            return null;
+        }
+        synchronized (statements) {
+            return statements.confidenceOf(statement);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         A knowledge base in an array of distinct terms kept in sorted order,
+ *         searched by binary search. Loading sorts once; adding a new term
+ *         afterwards shifts the terms after it.
+ */
+public class SortedArrayKnowledgeBase implements KnowledgeBase {
+    private String[] terms = new String[0];
+    private StatementList[] statements = new StatementList[0];
+    private int size = 0;
+
+    @Override
+    public String name() {
+        return "sorted";
+    }
+
+    /**
+     * Adds every well-formed line of a file. The lines are grouped by term
+     * in one pass in file order, then the distinct terms are sorted once,
+     * instead of inserting the lines one at a time.
+     *
+     * @param file The indexed file to load.
+     */
+    @Override
+    public void load(KbFile file) {
+        if (size > 0) {
+            KnowledgeBase.super.load(file); // Merge into the existing terms
+            return;
+        }
+        HashMap<String, StatementList> byTerm = new HashMap<>();
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                byTerm.computeIfAbsent(file.term(i), t -> new StatementList())
+                        .put(file.statement(i), file.confidence(i));
+            }
+        }
+        terms = byTerm.keySet().toArray(new String[0]);
+        Arrays.parallelSort(terms);
+        statements = new StatementList[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            statements[t] = byTerm.get(terms[t]);
+        }
+        size = terms.length;
+    }
+
+    @Override
+    public void add(String term, String statement, String confidence) {
+        int index = Arrays.binarySearch(terms, 0, size, term);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == terms.length) {
+                int capacity = Math.max(16, size * 2);
+                terms = Arrays.copyOf(terms, capacity);
+                statements = Arrays.copyOf(statements, capacity);
+            }
+            System.arraycopy(terms, index, terms, index + 1, size - index);
+            System.arraycopy(statements, index, statements, index + 1, size - index);
+            terms[index] = term;
+            statements[index] = new StatementList();
+            size++;
+        }
+        statements[index].put(statement, confidence);
+    }
+
+    @Override
+    public List<String> searchByTerm(String term) {
+        int index = Arrays.binarySearch(terms, 0, size, term);
+        return index >= 0 ? statements[index].statements() : Collections.emptyList();
+    }
+
+    @Override
+    public String searchByTermAndStatement(String term, String statement) {
+        int index = Arrays.binarySearch(terms, 0, size, term);
+        return index >= 0 ? statements[index].confidenceOf(statement) : null;
+    }
+}
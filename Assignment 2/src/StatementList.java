@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author Chris Scheepers
+ *         The statements about one term, in the order they were added, with
+ *         their confidence scores, as written, in a parallel array. Short lists are
+ *         searched by a scan; once a term has more statements than that pays
+ *         for, a hash index from statement to position is kept as well, so
+ *         loading a term with many statements is not quadratic.
+ *
+ *         <p>
+ *         A list can instead be filled with sequence numbers, for lines that
+ *         arrive out of order from several loader threads. It then lists the
+ *         statements in sequence order, and the outcome of repeated
+ *         statements does not depend on the order they arrived in. A list is
+ *         not thread-safe; callers that share one must lock it.
+ */
+class StatementList {
+    /** Statements a list holds before it builds its hash index. */
+    private static final int INDEX_THRESHOLD = 8;
+
+    private String[] statements = new String[1];
+    private String[] confidences = new String[1];
+    private int count = 0;
+    private HashMap<String, Integer> index; // Null until INDEX_THRESHOLD is reached
+    private long[] first; // Earliest sequence number of each statement; null unless sequenced
+    private long[] latest; // Sequence number its confidence score came from
+    private boolean unordered = false; // Whether first is out of order
+
+    /**
+     * Adds a statement, or replaces the confidence score of an equal one.
+     *
+     * @param statement  The statement.
+     * @param confidence The confidence score of the statement.
+     */
+    void put(String statement, String confidence) {
+        int at = indexOf(statement);
+        if (at >= 0) {
+            confidences[at] = confidence;
+            return;
+        }
+        append(statement, confidence);
+    }
+
+    /**
+     * Adds a statement with the sequence number of its line. If an equal
+     * statement is already stored, the statement takes the place of whichever
+     * copy has the lower sequence number and the confidence score of
+     * whichever has the higher, so the outcome does not depend on which copy
+     * was added first. A list is filled either with this method or with put,
+     * not both.
+     *
+     * @param seq        The sequence number of the addition.
+     * @param statement  The statement.
+     * @param confidence The confidence score of the statement.
+     */
+    void put(long seq, String statement, String confidence) {
+        if (first == null) {
+            first = new long[statements.length];
+            latest = new long[statements.length];
+        }
+        int at = indexOf(statement);
+        if (at >= 0) {
+            if (seq > latest[at]) {
+                latest[at] = seq;
+                confidences[at] = confidence;
+            }
+            if (seq < first[at]) {
+                first[at] = seq;
+                unordered = true;
+            }
+            return;
+        }
+        append(statement, confidence);
+        first[count - 1] = seq;
+        latest[count - 1] = seq;
+        if (count > 1 && first[count - 2] > seq) {
+            unordered = true;
+        }
+    }
+
+    private void append(String statement, String confidence) {
+        if (count == statements.length) {
+            statements = Arrays.copyOf(statements, count * 2);
+            confidences = Arrays.copyOf(confidences, count * 2);
+            if (first != null) {
+                first = Arrays.copyOf(first, count * 2);
+                latest = Arrays.copyOf(latest, count * 2);
+            }
+        }
+        statements[count] = statement;
+        confidences[count] = confidence;
+        count++;
+        if (index != null) {
+            index.put(statement, count - 1);
+        } else if (count == INDEX_THRESHOLD) {
+            buildIndex();
+        }
+    }
+
+    private void buildIndex() {
+        index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            index.put(statements[i], i);
+        }
+    }
+
+    /**
+     * Finds a statement.
+     *
+     * @param statement The statement to find.
+     * @return Its index, or -1 if absent.
+     */
+    int indexOf(String statement) {
+        if (index != null) {
+            Integer at = index.get(statement);
+            return at != null ? at : -1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (statements[i].equals(statement)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the confidence score of a statement.
+     *
+     * @param statement The statement.
+     * @return Its confidence score, or null if absent.
+     */
+    String confidenceOf(String statement) {
+        int at = indexOf(statement);
+        return at >= 0 ? confidences[at] : null;
+    }
+
+    /**
+     * Returns the statements as a list.
+     *
+     * @return The statements, oldest first, or in sequence order if the list
+     *         was filled with sequence numbers.
+     */
+    List<String> statements() {
+        if (unordered) {
+            sortBySequence();
+        }
+        return Arrays.asList(Arrays.copyOf(statements, count));
+    }
+
+    /**
+     * Puts the statements back in sequence order after some arrived late.
+     */
+    private void sortBySequence() {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, 0, count, new int[count]);
+        String[] sortedStatements = new String[statements.length];
+        String[] sortedConfidences = new String[confidences.length];
+        long[] sortedFirst = new long[first.length];
+        long[] sortedLatest = new long[latest.length];
+        for (int i = 0; i < count; i++) {
+            sortedStatements[i] = statements[order[i]];
+            sortedConfidences[i] = confidences[order[i]];
+            sortedFirst[i] = first[order[i]];
+            sortedLatest[i] = latest[order[i]];
+        }
+        statements = sortedStatements;
+        confidences = sortedConfidences;
+        first = sortedFirst;
+        latest = sortedLatest;
+        if (index != null) {
+            buildIndex();
+        }
+        unordered = false;
+    }
+
+    /** Sorts a range of positions by their earliest sequence number. */
+    private void mergeSort(int[] order, int from, int to, int[] scratch) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, from, mid, scratch);
+        mergeSort(order, mid, to, scratch);
+        System.arraycopy(order, from, scratch, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            order[k] = j >= to || (i < mid && first[scratch[i]] <= first[scratch[j]]) ? scratch[i++] : scratch[j++];
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @author Chris Scheepers
+ * Represents a node in a term-keyed AVL tree. Every statement about the term
+ * is kept in the node, with its confidence score in a parallel array and,
+ * when one was given, the score as written in a third.
+ */
+class TermAVLNode {
+    /** Statements a node holds before indexOf builds a hash index. */
+    private static final int INDEX_THRESHOLD = 8;
+
+    final String term;
+    String[] statements = new String[1];
+    float[] confidences = new float[1];
+    String[] confidenceTexts; // Scores as written; null unless a text was given
+    int count;
+    TermAVLNode left;
+    TermAVLNode right;
+    int height;
+    private HashMap<String, Integer> index; // First place of each statement; null until needed
+
+    /**
+     * Constructs a TermAVLNode holding one statement about a term.
+     *
+     * @param term       The term the node is keyed by.
+     * @param statement  The first statement about the term.
+     * @param confidence The confidence score of the statement.
+     */
+    public TermAVLNode(String term, String statement, float confidence) {
+        this(term, statement, confidence, null);
+    }
+
+    /**
+     * Constructs a TermAVLNode holding one statement about a term, keeping
+     * the confidence score as written.
+     *
+     * @param term           The term the node is keyed by.
+     * @param statement      The first statement about the term.
+     * @param confidence     The confidence score of the statement.
+     * @param confidenceText The confidence score as written, or null.
+     */
+    TermAVLNode(String term, String statement, float confidence, String confidenceText) {
+        this.term = term;
+        add(statement, confidence, confidenceText);
+        left = right = null;
+        height = 1;
+    }
+
+    /**
+     * Constructs a TermAVLNode that takes ownership of already-built arrays of
+     * statements and confidence scores.
+     *
+     * @param term        The term the node is keyed by.
+     * @param statements  The statements about the term.
+     * @param confidences The confidence scores, parallel to the statements.
+     */
+    TermAVLNode(String term, String[] statements, float[] confidences) {
+        this.term = term;
+        this.statements = statements;
+        this.confidences = confidences;
+        count = statements.length;
+        left = right = null;
+        height = 1;
+    }
+
+    /**
+     * Appends a statement about this node's term.
+     *
+     * @param statement  The statement.
+     * @param confidence The confidence score of the statement.
+     */
+    void add(String statement, float confidence) {
+        add(statement, confidence, null);
+    }
+
+    /**
+     * Appends a statement about this node's term, keeping the confidence
+     * score as written.
+     *
+     * @param statement      The statement.
+     * @param confidence     The confidence score of the statement.
+     * @param confidenceText The confidence score as written, or null.
+     */
+    void add(String statement, float confidence, String confidenceText) {
+        if (count == statements.length) {
+            statements = Arrays.copyOf(statements, count * 2);
+            confidences = Arrays.copyOf(confidences, count * 2);
+            if (confidenceTexts != null) {
+                confidenceTexts = Arrays.copyOf(confidenceTexts, count * 2);
+            }
+        }
+        statements[count] = statement;
+        confidences[count] = confidence;
+        setConfidenceText(count, confidenceText);
+        count++;
+        if (index != null) {
+            index.putIfAbsent(statement, count - 1);
+        }
+    }
+
+    /**
+     * Keeps one copy of each statement, at the place of its first copy and
+     * with the confidence score of its last, as adding the statements one at
+     * a time through a KnowledgeBase would.
+     */
+    void dropRepeats() {
+        if (count < 2) {
+            return;
+        }
+        HashMap<String, Integer> first = new HashMap<>(count * 2);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            Integer at = first.putIfAbsent(statements[i], kept);
+            if (at != null) {
+                confidences[at] = confidences[i];
+                if (confidenceTexts != null) {
+                    confidenceTexts[at] = confidenceTexts[i];
+                }
+            } else {
+                statements[kept] = statements[i];
+                confidences[kept] = confidences[i];
+                if (confidenceTexts != null) {
+                    confidenceTexts[kept] = confidenceTexts[i];
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(statements, kept, count, null);
+        if (confidenceTexts != null) {
+            Arrays.fill(confidenceTexts, kept, count, null);
+        }
+        count = kept;
+        index = null; // Places have moved; rebuilt on the next lookup
+    }
+
+    /**
+     * Finds a statement about this node's term. Once the node holds more than
+     * a few statements, lookups go through a hash index built on first use,
+     * so adding to a term with many statements is not quadratic.
+     *
+     * @param statement The statement to find.
+     * @return Its index, or -1 if absent.
+     */
+    int indexOf(String statement) {
+        if (index == null && count >= INDEX_THRESHOLD) {
+            index = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                index.putIfAbsent(statements[i], i);
+            }
+        }
+        if (index != null) {
+            Integer at = index.get(statement);
+            return at != null ? at : -1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (statements[i].equals(statement)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the confidence score of a statement about the term.
+     *
+     * @param index      The index of the statement.
+     * @param confidence The new confidence score.
+     */
+    void setConfidence(int index, float confidence) {
+        setConfidence(index, confidence, null);
+    }
+
+    /**
+     * Replaces the confidence score of a statement about the term, keeping
+     * the new score as written.
+     *
+     * @param index          The index of the statement.
+     * @param confidence     The new confidence score.
+     * @param confidenceText The new confidence score as written, or null.
+     */
+    void setConfidence(int index, float confidence, String confidenceText) {
+        confidences[index] = confidence;
+        setConfidenceText(index, confidenceText);
+    }
+
+    private void setConfidenceText(int index, String confidenceText) {
+        if (confidenceTexts == null && confidenceText != null) {
+            confidenceTexts = new String[statements.length];
+        }
+        if (confidenceTexts != null) {
+            confidenceTexts[index] = confidenceText;
+        }
+    }
+
+    /**
+     * Returns the term this node is keyed by.
+     *
+     * @return The term.
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Returns the number of statements about the term.
+     *
+     * @return The number of statements.
+     */
+    public int statementCount() {
+        return count;
+    }
+
+    /**
+     * Returns a statement about the term.
+     *
+     * @param index The index of the statement.
+     * @return The statement.
+     */
+    public String getStatement(int index) {
+        return statements[index];
+    }
+
+    /**
+     * Returns the confidence score of a statement about the term.
+     *
+     * @param index The index of the statement.
+     * @return The confidence score.
+     */
+    public float getConfidence(int index) {
+        return confidences[index];
+    }
+
+    /**
+     * Returns the confidence score of a statement about the term as it was
+     * written, or as the number prints if no text was kept for it.
+     *
+     * @param index The index of the statement.
+     * @return The confidence score as text.
+     */
+    public String getConfidenceText(int index) {
+        if (confidenceTexts != null && confidenceTexts[index] != null) {
+            return confidenceTexts[index];
+        }
+        return Float.toString(confidences[index]);
+    }
+}
@@ -0,0 +1,346 @@
+import java.util.Arrays;
+
+/**
+ * Represents an AVL tree ordered by term, where each node holds all of the
+ * statements about its term. Unlike AVLTree, which orders whole lines, the
+ * insert order and the search key agree, so a term is found with a single
+ * root-to-node descent.
+ */
+public class TermAVLTree {
+    TermAVLNode root;
+    private int size = 0;
+    private int searchOpCount = 0;
+    private int insertOpCount = 0;
+    private boolean bulkBuilt = false; // Linked from sorted nodes rather than inserted
+    private BloomFilter filter; // Rejects absent terms before a descent, if enabled
+    private double filterFpp;
+
+    /**
+     * Constructs an empty term-keyed AVL tree.
+     */
+    public TermAVLTree() {
+        root = null;
+    }
+
+    /**
+     * Builds a perfectly balanced tree from every well-formed line of a
+     * knowledge base file. The lines are sorted by term in parallel, statements
+     * sharing a term are merged into one node in file order, and the tree is
+     * assembled bottom-up with correct heights, so later calls to insert keep
+     * working as normal.
+     *
+     * @param file The indexed file to read.
+     * @return The new tree.
+     */
+    public static TermAVLTree build(KbFile file) {
+        return build(file, false);
+    }
+
+    /**
+     * Builds a perfectly balanced tree from every well-formed line of a
+     * knowledge base file, as build(file) does, optionally keeping each
+     * confidence score as written in the file as well as its value.
+     *
+     * @param file      The indexed file to read.
+     * @param keepTexts Whether to keep the confidence scores as written.
+     * @return The new tree.
+     */
+    public static TermAVLTree build(KbFile file, boolean keepTexts) {
+        TermAVLNode[] nodes = new TermAVLNode[file.size()];
+        int count = 0;
+        for (int i = 0; i < file.size(); i++) {
+            if (file.isWellFormed(i)) {
+                nodes[count++] = new TermAVLNode(file.term(i), file.statement(i), file.confidenceValue(i),
+                        keepTexts ? file.confidence(i) : null);
+            }
+        }
+        // The parallel sort is stable, so statements stay in file order
+        Arrays.parallelSort(nodes, 0, count, (a, b) -> a.term.compareTo(b.term));
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique > 0 && nodes[i].term.equals(nodes[unique - 1].term)) {
+                nodes[unique - 1].add(nodes[i].statements[0], nodes[i].confidences[0],
+                        nodes[i].confidenceTexts != null ? nodes[i].confidenceTexts[0] : null);
+            } else {
+                nodes[unique++] = nodes[i];
+            }
+        }
+        return fromSorted(nodes, unique);
+    }
+
+    /**
+     * Links nodes that are already sorted by term, one per term, into a
+     * perfectly balanced tree.
+     *
+     * @param nodes The sorted nodes.
+     * @param count The number of nodes to use from the start of the array.
+     * @return The new tree.
+     */
+    static TermAVLTree fromSorted(TermAVLNode[] nodes, int count) {
+        TermAVLTree tree = new TermAVLTree();
+        tree.root = buildRange(nodes, 0, count - 1);
+        tree.size = count;
+        tree.bulkBuilt = true;
+        return tree;
+    }
+
+    /**
+     * Links a sorted range of nodes into a balanced subtree.
+     *
+     * @param nodes The sorted nodes, one per term.
+     * @param low   The first index of the range.
+     * @param high  The last index of the range.
+     * @return The root of the subtree, or null if the range is empty.
+     */
+    private static TermAVLNode buildRange(TermAVLNode[] nodes, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+        int mid = (low + high) >>> 1;
+        TermAVLNode node = nodes[mid];
+        node.left = buildRange(nodes, low, mid - 1);
+        node.right = buildRange(nodes, mid + 1, high);
+        int leftHeight = node.left == null ? 0 : node.left.height;
+        int rightHeight = node.right == null ? 0 : node.right.height;
+        node.height = 1 + Math.max(leftHeight, rightHeight);
+        return node;
+    }
+
+    /**
+     * Adds a statement about a term, creating the term's node if needed.
+     *
+     * @param term       The term.
+     * @param statement  The statement.
+     * @param confidence The confidence score of the statement.
+     */
+    public void insert(String term, String statement, float confidence) {
+        insert(term, statement, confidence, null);
+    }
+
+    /**
+     * Adds a statement about a term, creating the term's node if needed, and
+     * keeps the confidence score as written.
+     *
+     * @param term           The term.
+     * @param statement      The statement.
+     * @param confidence     The confidence score of the statement.
+     * @param confidenceText The confidence score as written, or null.
+     */
+    public void insert(String term, String statement, float confidence, String confidenceText) {
+        root = insertRec(root, term, statement, confidence, confidenceText);
+        if (filter != null) {
+            if (size > 2 * filter.getExpected()) {
+                enableBloomFilter(filterFpp); // Resize before false positives climb
+            } else {
+                filter.add(term);
+            }
+        }
+    }
+
+    /**
+     * Builds a Bloom filter over the terms in the tree, sized from the current
+     * number of terms, and uses it to reject absent terms before searching.
+     * The filter is kept up to date by insert.
+     *
+     * @param fpp The target false positive rate, strictly between 0 and 1.
+     * @throws IllegalArgumentException If fpp is out of range.
+     */
+    public void enableBloomFilter(double fpp) {
+        BloomFilter rebuilt = new BloomFilter(Math.max(1, size), fpp);
+        for (TermAVLNode node : nodesInOrder()) {
+            rebuilt.add(node.term);
+        }
+        filter = rebuilt;
+        filterFpp = fpp;
+    }
+
+    private TermAVLNode insertRec(TermAVLNode node, String term, String statement, float confidence,
+            String confidenceText) {
+        if (node == null) {
+            insertOpCount++;
+            size++;
+            return new TermAVLNode(term, statement, confidence, confidenceText);
+        }
+
+        int cmp = term.compareTo(node.term);
+        insertOpCount++;
+        if (cmp < 0) {
+            node.left = insertRec(node.left, term, statement, confidence, confidenceText);
+        } else if (cmp > 0) {
+            node.right = insertRec(node.right, term, statement, confidence, confidenceText);
+        } else {
+            node.add(statement, confidence, confidenceText); // Existing term, no structural change
+            return node;
+        }
+
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        int balance = height(node.left) - height(node.right);
+
+        // Left Left Case
+        if (balance > 1 && term.compareTo(node.left.term) < 0) {
+            return rightRotate(node);
+        }
+
+        // Right Right Case
+        if (balance < -1 && term.compareTo(node.right.term) > 0) {
+            return leftRotate(node);
+        }
+
+        // Left Right Case
+        if (balance > 1 && term.compareTo(node.left.term) > 0) {
+            node.left = leftRotate(node.left);
+            return rightRotate(node);
+        }
+
+        // Right Left Case
+        if (balance < -1 && term.compareTo(node.right.term) < 0) {
+            node.right = rightRotate(node.right);
+            return leftRotate(node);
+        }
+
+        return node;
+    }
+
+    /**
+     * Finds the node for a term.
+     *
+     * @param term The term to find.
+     * @return The node holding the term's statements, or null if absent.
+     */
+    public TermAVLNode find(String term) {
+        if (filter != null && !filter.mightContain(term)) {
+            return null;
+        }
+        TermAVLNode node = root;
+        while (node != null) {
+            searchOpCount++;
+            int cmp = term.compareTo(node.term);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the node for a term without updating the operation count, so
+     * several threads can look terms up at once while nothing is inserted.
+     *
+     * @param term The term to find.
+     * @return The node holding the term's statements, or null if absent.
+     */
+    public TermAVLNode get(String term) {
+        if (filter != null && !filter.mightContain(term)) {
+            return null;
+        }
+        TermAVLNode node = root;
+        while (node != null) {
+            int cmp = term.compareTo(node.term);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Searches for a term and prints every statement about it.
+     *
+     * @param term The term to be searched.
+     * @return true if the term is found, false otherwise.
+     */
+    public boolean search(String term) {
+        TermAVLNode node = find(term);
+        if (node == null) {
+            return false;
+        }
+        for (int i = 0; i < node.count; i++) {
+            System.out.println(node.term + ": " + node.statements[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Collects every node in term order with an explicit stack.
+     *
+     * @return The nodes, sorted by term.
+     */
+    TermAVLNode[] nodesInOrder() {
+        TermAVLNode[] nodes = new TermAVLNode[size];
+        TermAVLNode[] stack = new TermAVLNode[height(root)];
+        int top = 0;
+        int count = 0;
+        TermAVLNode node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            nodes[count++] = node;
+            node = node.right;
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the number of distinct terms in the tree.
+     *
+     * @return The number of terms.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int height(TermAVLNode node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private TermAVLNode rightRotate(TermAVLNode y) {
+        TermAVLNode x = y.left;
+        y.left = x.right;
+        x.right = y;
+        y.height = Math.max(height(y.left), height(y.right)) + 1;
+        x.height = Math.max(height(x.left), height(x.right)) + 1;
+        return x;
+    }
+
+    private TermAVLNode leftRotate(TermAVLNode x) {
+        TermAVLNode y = x.right;
+        x.right = y.left;
+        y.left = x;
+        x.height = Math.max(height(x.left), height(x.right)) + 1;
+        y.height = Math.max(height(y.left), height(y.right)) + 1;
+        return y;
+    }
+
+    // Getters for operation counts
+    public int getSearchOpCount() {
+        return searchOpCount;
+    }
+
+    public int getInsertOpCount() {
+        return insertOpCount;
+    }
+
+    public void resetSearchOpCount() {
+        searchOpCount = 0;
+    }
+
+    /**
+     * Checks whether the tree was linked from sorted nodes by build rather
+     * than grown by insert. Such a tree makes no comparisons while it is
+     * built, so its insert operation count only covers later inserts.
+     *
+     * @return true if the tree was bulk-built.
+     */
+    public boolean isBulkBuilt() {
+        return bulkBuilt;
+    }
+
+    public void resetInsertOpCount() {
+        insertOpCount = 0;
+    }
+}